@@ -0,0 +1,44 @@
+package com.benchmark;
+
+import java.util.Random;
+
+/**
+ * Synthetic text for benchmarks: vocabSize distinct words with punctuation, so
+ * tokenizers and models can be built at any vocabulary size without a corpus
+ * download.
+ */
+final class Corpus {
+
+	private static final String PUNCTUATION = ".,;:!?";
+
+	private Corpus() {
+	}
+
+	static String word(int index) {
+		return "w" + Integer.toString(index, 36);
+	}
+
+	/**
+	 * Every word once, so the vocabulary has vocabSize words plus punctuation.
+	 */
+	static String vocabulary(int vocabSize) {
+		StringBuilder text = new StringBuilder(vocabSize * 6);
+		for (int i = 0; i < vocabSize; i++) {
+			text.append(word(i)).append(' ');
+		}
+		return text.append(PUNCTUATION).toString();
+	}
+
+	static String randomText(int vocabSize, int tokens, long seed) {
+		Random random = new Random(seed);
+		StringBuilder text = new StringBuilder(tokens * 6);
+		for (int i = 0; i < tokens; i++) {
+			if (random.nextInt(8) == 0) {
+				text.append(PUNCTUATION.charAt(random.nextInt(PUNCTUATION.length()))).append(' ');
+			} else {
+				text.append(word(random.nextInt(vocabSize))).append(' ');
+			}
+		}
+		return text.toString();
+	}
+}
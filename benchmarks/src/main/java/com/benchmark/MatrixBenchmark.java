@@ -0,0 +1,51 @@
+package com.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.simple.attention.Matrix;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class MatrixBenchmark {
+
+	@Param({ "16", "64", "256", "512" })
+	int size;
+
+	float[][] a;
+	float[][] b;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		a = new float[size][size];
+		b = new float[size][size];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				a[i][j] = random.nextFloat() - 0.5f;
+				b[i][j] = random.nextFloat() - 0.5f;
+			}
+		}
+	}
+
+	@Benchmark
+	public float[][] doCrossProduct() {
+		return Matrix.doCrossProduct(a, b);
+	}
+}
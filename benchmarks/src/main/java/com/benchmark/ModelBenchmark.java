@@ -0,0 +1,72 @@
+package com.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.llm.PositionalEncoder;
+import com.llm.Precision;
+import com.llm.Sampler;
+import com.llm.SimpleTokenizer;
+import com.llm.TransformerModel;
+
+/**
+ * Training cost per sequence and generation cost per token of
+ * TransformerModel. Training updates the weights, so the model keeps
+ * changing across iterations; that does not change the work done per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ModelBenchmark {
+
+	static final int SEQUENCE_LENGTH = 64;
+	static final int GENERATED_TOKENS = 32;
+
+	@Param({ "32", "128" })
+	int dim;
+
+	@Param({ "1000", "10000" })
+	int vocabSize;
+
+	@Param({ "FLOAT64", "FLOAT32" })
+	Precision precision;
+
+	TransformerModel model;
+	int[] sequence;
+	int[] prompt;
+
+	@Setup
+	public void setup() {
+		SimpleTokenizer tokenizer = new SimpleTokenizer(Corpus.vocabulary(vocabSize));
+		model = new TransformerModel(tokenizer, dim, PositionalEncoder.DEFAULT_MAX_CONTEXT_LENGTH, precision);
+		sequence = tokenizer.encodeToArray(Corpus.randomText(vocabSize, SEQUENCE_LENGTH, 42));
+		prompt = tokenizer.encodeToArray(Corpus.randomText(vocabSize, 8, 7));
+	}
+
+	@Benchmark
+	public TransformerModel trainSequence() {
+		model.trainSequence(sequence, 0, sequence.length);
+		return model;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(GENERATED_TOKENS)
+	public int[] generatePerToken() {
+		return model.generate(prompt, GENERATED_TOKENS, Sampler.greedy());
+	}
+}
@@ -0,0 +1,62 @@
+package com.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.llm.PositionalEncoder;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionalEncoderBenchmark {
+
+	static final int CONTEXT = 1024;
+
+	@Param({ "64", "256", "1024" })
+	int dim;
+
+	PositionalEncoder encoder;
+	double[] embedding;
+
+	@Setup
+	public void setup() {
+		encoder = new PositionalEncoder(dim, CONTEXT);
+		embedding = new double[dim];
+		encoder.addTo(embedding, 0, embedding);
+	}
+
+	/**
+	 * Adding the cached encoding of every position once, per position.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(CONTEXT)
+	public double[] addTo() {
+		for (int pos = 0; pos < CONTEXT; pos++) {
+			encoder.addTo(embedding, pos, embedding);
+		}
+		return embedding;
+	}
+
+	/**
+	 * Computing one position from scratch, as the static helper does.
+	 */
+	@Benchmark
+	public double[] compute() {
+		return PositionalEncoder.getPositionalEncoding(CONTEXT / 2, dim);
+	}
+}
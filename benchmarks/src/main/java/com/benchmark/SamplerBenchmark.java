@@ -0,0 +1,61 @@
+package com.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.llm.Sampler;
+
+/**
+ * One sampling decision over a row of vocabulary logits, the softmax every
+ * decode step ends with: full-vocabulary temperature sampling, top-k and
+ * top-p.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SamplerBenchmark {
+
+	@Param({ "1000", "32000" })
+	int vocabSize;
+
+	@Param({ "temperature", "topK", "topP" })
+	String strategy;
+
+	double[] logits;
+	Sampler sampler;
+	Random random;
+
+	@Setup
+	public void setup() {
+		random = new Random(42);
+		logits = new double[vocabSize];
+		for (int i = 0; i < vocabSize; i++) {
+			logits[i] = random.nextGaussian() * 4;
+		}
+		sampler = switch (strategy) {
+		case "topK" -> Sampler.topK(40, 0.7);
+		case "topP" -> Sampler.topP(0.95, 0.7);
+		default -> Sampler.temperature(0.7);
+		};
+	}
+
+	@Benchmark
+	public int sample() {
+		return sampler.sample(logits, random);
+	}
+}
@@ -0,0 +1,54 @@
+package com.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.compute.FloatTensor;
+import com.simple.attention.QueryKeyValueProcessor;
+
+/**
+ * The row-wise softmax that scaled dot-product attention applies to its
+ * scores, for a block of queries against a growing number of keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SoftmaxBenchmark {
+
+	private static final int QUERIES = 16;
+
+	@Param({ "64", "1024", "32768" })
+	int length;
+
+	FloatTensor scores;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		scores = FloatTensor.zeros(QUERIES, length);
+		float[] values = scores.data();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (float) random.nextGaussian();
+		}
+	}
+
+	@Benchmark
+	public FloatTensor attentionSoftmax() {
+		return QueryKeyValueProcessor.softmax(scores);
+	}
+}
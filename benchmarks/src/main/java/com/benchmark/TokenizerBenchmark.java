@@ -0,0 +1,60 @@
+package com.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.llm.SimpleTokenizer;
+
+/**
+ * Encode and decode throughput, reported per token.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+	static final int TOKENS = 4096;
+
+	@Param({ "1000", "10000", "50000" })
+	int vocabSize;
+
+	SimpleTokenizer tokenizer;
+	String text;
+	int[] tokenIds;
+
+	@Setup
+	public void setup() {
+		tokenizer = new SimpleTokenizer(Corpus.vocabulary(vocabSize));
+		text = Corpus.randomText(vocabSize, TOKENS, 42);
+		tokenIds = new int[TOKENS];
+		tokenizer.encode(text, tokenIds, 0);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public int[] encode() {
+		tokenizer.encode(text, tokenIds, 0);
+		return tokenIds;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public String decode() {
+		return tokenizer.decodeToString(tokenIds, 0, TOKENS);
+	}
+}
@@ -0,0 +1,75 @@
+package com.compute;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tensors survive a Java serialization round trip with their shape, strides
+ * and offset, and views read back the same elements as the original.
+ */
+class TensorSerializationTest {
+
+	@Test
+	void floatTensorRoundTrips() throws Exception {
+		FloatTensor tensor = FloatTensor.of(new float[][] { { 1, 2, 3 }, { 4, 5, 6 } });
+		FloatTensor copy = roundTrip(tensor);
+		assertArrayEquals(tensor.shape(), copy.shape());
+		assertArrayEquals(tensor.toArray(), copy.toArray());
+	}
+
+	@Test
+	void doubleTensorRoundTrips() throws Exception {
+		DoubleTensor tensor = DoubleTensor.of(new double[][] { { 1, 2 }, { 3, 4 }, { 5, 6 } });
+		DoubleTensor copy = roundTrip(tensor);
+		assertArrayEquals(tensor.shape(), copy.shape());
+		assertArrayEquals(tensor.toArray(), copy.toArray());
+	}
+
+	@Test
+	void stridedViewRoundTrips() throws Exception {
+		FloatTensor matrix = FloatTensor.of(new float[][] { { 1, 2, 3, 4 }, { 5, 6, 7, 8 }, { 9, 10, 11, 12 } });
+		FloatTensor view = matrix.slice(0, 1, 3).slice(1, 1, 4).transpose();
+		FloatTensor copy = roundTrip(view);
+		assertArrayEquals(view.shape(), copy.shape());
+		assertEquals(view.stride(0), copy.stride(0));
+		assertEquals(view.stride(1), copy.stride(1));
+		assertEquals(view.offset(), copy.offset());
+		assertArrayEquals(view.toArray(), copy.toArray());
+	}
+
+	@Test
+	void segmentTensorIsWrittenAsHeapCopy() throws Exception {
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment segment = arena.allocate(4L * Double.BYTES);
+			for (int i = 0; i < 4; i++) {
+				segment.setAtIndex(DoubleTensor.LAYOUT, i, i + 0.5);
+			}
+			DoubleTensor tensor = DoubleTensor.wrap(segment, 2, 2);
+			DoubleTensor copy = roundTrip(tensor);
+			assertTrue(copy.hasArray());
+			assertArrayEquals(tensor.toArray(), copy.toArray());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T roundTrip(T value) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(value);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (T) in.readObject();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.llm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * An epoch that is stopped part way through, by the consumer or by an
+ * interrupt, can be followed by a complete new one.
+ */
+class DataLoaderTest {
+
+	private static final int SENTENCES = 200;
+
+	@TempDir
+	Path directory;
+
+	private TokenShard shard;
+	private DataLoader loader;
+
+	@BeforeEach
+	void openLoader() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < SENTENCES; i++) {
+			text.append("sentence number ").append(i).append(" has a few more words. ");
+		}
+		Path corpus = Files.writeString(directory.resolve("corpus.txt"), text);
+		shard = TokenShard.build(corpus, new SimpleTokenizer(text.toString()), directory.resolve("corpus.shard"), 16,
+				2);
+		// a small queue, so producers are blocked on it when the epoch is abandoned
+		loader = new DataLoader(shard, 4, 2, 2, 1);
+	}
+
+	@AfterEach
+	void closeLoader() {
+		loader.close();
+		shard.close();
+	}
+
+	@Test
+	void partiallyConsumedEpochCanBeRestarted() {
+		loader.startEpoch();
+		assertNotNull(loader.nextBatch());
+		loader.startEpoch();
+		assertEquals(SENTENCES, consumeEpoch());
+	}
+
+	@Test
+	void abandonedEpochEndsIt() {
+		loader.startEpoch();
+		assertNotNull(loader.nextBatch());
+		loader.abandonEpoch();
+		assertNull(loader.nextBatch());
+		loader.startEpoch();
+		assertEquals(SENTENCES, consumeEpoch());
+	}
+
+	@Test
+	void interruptedEpochCanBeRestarted() {
+		loader.startEpoch();
+		assertNotNull(loader.nextBatch());
+		Thread.currentThread().interrupt();
+		assertThrows(IllegalStateException.class, loader::nextBatch);
+		loader.startEpoch();
+		// the interrupt is still pending for the caller to handle
+		assertTrue(Thread.interrupted());
+		assertEquals(SENTENCES, consumeEpoch());
+	}
+
+	private int consumeEpoch() {
+		int sequences = 0;
+		List<int[]> batch;
+		while ((batch = loader.nextBatch()) != null) {
+			sequences += batch.size();
+		}
+		return sequences;
+	}
+}
@@ -0,0 +1,91 @@
+package com.llm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Corrupt checkpoint headers are reported as IOExceptions rather than
+ * failing later with runtime exceptions.
+ */
+class ModelCheckpointTest {
+
+	// byte offsets of the version 2 header fields
+	private static final int DIMENSION = 8;
+	private static final int VOCAB_SIZE = 12;
+	private static final int MAX_CONTEXT_LENGTH = 16;
+	private static final int TOKEN_COUNT = 24;
+	private static final int FIRST_TOKEN_LENGTH = 28;
+
+	@TempDir
+	Path directory;
+
+	private byte[] checkpoint;
+
+	@BeforeEach
+	void writeCheckpoint() throws IOException {
+		TransformerModel model = new TransformerModel(new SimpleTokenizer("the cat sat on the mat"), 4, 8,
+				Precision.FLOAT32);
+		Path path = directory.resolve("model.ckpt");
+		ModelCheckpoint.write(model, path);
+		checkpoint = Files.readAllBytes(path);
+	}
+
+	@Test
+	void readsIntactCheckpoint() throws IOException {
+		TransformerModel model = ModelCheckpoint.read(write(checkpoint));
+		assertEquals(4, model.getTokenVectorDimension());
+		assertEquals(6, model.getTokenizer().getVocabSize());
+	}
+
+	@Test
+	void rejectsNonPositiveSizes() {
+		assertCorrupt(DIMENSION, 0);
+		assertCorrupt(VOCAB_SIZE, -1);
+		assertCorrupt(MAX_CONTEXT_LENGTH, -8);
+	}
+
+	@Test
+	void rejectsTensorsTooLargeForAnInt() {
+		assertCorrupt(VOCAB_SIZE, Integer.MAX_VALUE);
+	}
+
+	@Test
+	void rejectsTokenCountNotMatchingVocabulary() {
+		assertCorrupt(TOKEN_COUNT, 4);
+		assertCorrupt(TOKEN_COUNT, Integer.MAX_VALUE);
+	}
+
+	@Test
+	void rejectsBadTokenLength() {
+		assertCorrupt(FIRST_TOKEN_LENGTH, -1);
+		assertCorrupt(FIRST_TOKEN_LENGTH, checkpoint.length);
+	}
+
+	@Test
+	void rejectsTruncatedHeader() throws IOException {
+		byte[] truncated = new byte[FIRST_TOKEN_LENGTH + 2];
+		System.arraycopy(checkpoint, 0, truncated, 0, truncated.length);
+		Path path = write(truncated);
+		assertThrows(IOException.class, () -> ModelCheckpoint.read(path));
+	}
+
+	private void assertCorrupt(int fieldOffset, int value) {
+		byte[] corrupt = checkpoint.clone();
+		ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(fieldOffset, value);
+		assertThrows(IOException.class, () -> ModelCheckpoint.read(write(corrupt)));
+	}
+
+	private Path write(byte[] bytes) throws IOException {
+		return Files.write(Files.createTempFile(directory, "checkpoint", ".ckpt"), bytes);
+	}
+}
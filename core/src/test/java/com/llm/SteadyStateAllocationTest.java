@@ -0,0 +1,111 @@
+package com.llm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.metrics.StepMetrics;
+
+/**
+ * Once a thread's workspace and a generation's sampler buffers have reached
+ * their size, training and decode steps allocate nothing. The model is small
+ * enough that every multiply stays below Gemm's parallel threshold, so all of
+ * a step's work is counted on the calling thread.
+ */
+class SteadyStateAllocationTest {
+
+	private static final int DIMENSION = 16;
+	private static final int CONTEXT = 64;
+	private static final int SEQUENCE_LENGTH = 32;
+	private static final int PROMPT_LENGTH = 8;
+	private static final int BATCH = 4;
+	private static final int WARMUP = 5000;
+	private static final int STEPS = 200;
+
+	private static final SimpleTokenizer TOKENIZER;
+	private static final int[] CORPUS;
+
+	static {
+		Random random = new Random(1);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			text.append('w').append(random.nextInt(100)).append(' ');
+		}
+		TOKENIZER = new SimpleTokenizer(text.toString());
+		CORPUS = TOKENIZER.encodeToArray(text.toString());
+	}
+
+	@BeforeAll
+	static void requireAllocationCounter() {
+		// allocatedBytes() is 0 on a JVM without per-thread allocation counting
+		assumeTrue(StepMetrics.allocatedBytes() > 0, "JVM does not count per-thread allocation");
+	}
+
+	@ParameterizedTest
+	@EnumSource(Precision.class)
+	void trainSequenceAllocatesNothing(Precision precision) {
+		TransformerModel model = new TransformerModel(TOKENIZER, DIMENSION, CONTEXT, precision);
+		for (int i = 0; i < WARMUP; i++) {
+			train(model, i);
+		}
+		long before = StepMetrics.allocatedBytes();
+		for (int i = 0; i < STEPS; i++) {
+			train(model, i);
+		}
+		assertEquals(0, StepMetrics.allocatedBytes() - before, "bytes allocated by " + STEPS + " training steps");
+	}
+
+	@ParameterizedTest
+	@EnumSource(Precision.class)
+	void decodeStepWithTopKAllocatesNothing(Precision precision) {
+		assertDecodeAllocatesNothing(precision, () -> Sampler.topK(20, 0.8));
+	}
+
+	@ParameterizedTest
+	@EnumSource(Precision.class)
+	void decodeStepWithTopPAllocatesNothing(Precision precision) {
+		assertDecodeAllocatesNothing(precision, () -> Sampler.topP(0.9, 0.8));
+	}
+
+	private static void assertDecodeAllocatesNothing(Precision precision, Supplier<Sampler> samplers) {
+		TransformerModel model = new TransformerModel(TOKENIZER, DIMENSION, CONTEXT, precision);
+		int maxNewTokens = CONTEXT + 1 - PROMPT_LENGTH;
+		for (int i = 0; i < WARMUP / maxNewTokens; i++) {
+			List<Generation> batch = startBatch(model, maxNewTokens, samplers);
+			while (!batch.get(0).isFinished()) {
+				model.decodeStep(batch);
+			}
+		}
+		// a generation's sampler sizes its buffers on the first step
+		List<Generation> batch = startBatch(model, maxNewTokens, samplers);
+		model.decodeStep(batch);
+		int steps = maxNewTokens - 1;
+		long before = StepMetrics.allocatedBytes();
+		for (int i = 0; i < steps; i++) {
+			model.decodeStep(batch);
+		}
+		assertEquals(0, StepMetrics.allocatedBytes() - before, "bytes allocated by " + steps + " decode steps");
+	}
+
+	private static void train(TransformerModel model, int step) {
+		model.trainSequence(CORPUS, step * 37 % (CORPUS.length - SEQUENCE_LENGTH), SEQUENCE_LENGTH);
+	}
+
+	private static List<Generation> startBatch(TransformerModel model, int maxNewTokens, Supplier<Sampler> samplers) {
+		int[] prompt = Arrays.copyOf(CORPUS, PROMPT_LENGTH);
+		List<Generation> batch = new ArrayList<>(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			batch.add(model.startGeneration(prompt, maxNewTokens, samplers.get()));
+		}
+		return batch;
+	}
+}
@@ -0,0 +1,44 @@
+package com.simple.attention;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * A trained layer read back from Java serialization projects exactly like
+ * the one that was written.
+ */
+class LinearSerializationTest {
+
+	@Test
+	void readBackLayerGivesIdenticalOutput() throws Exception {
+		Random random = new Random(7);
+		Linear layer = new Linear(5, 3, random);
+		float[][] input = new float[4][5];
+		for (float[] row : input) {
+			for (int i = 0; i < row.length; i++) {
+				row[i] = (float) random.nextGaussian();
+			}
+		}
+		// move the bias off zero so it has to be written too
+		layer.backward(input, layer.forward(input), 0.1f);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(layer);
+		}
+		Linear copy;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			copy = (Linear) in.readObject();
+		}
+
+		assertArrayEquals(layer.forward(input), copy.forward(input));
+		assertArrayEquals(layer.getBias(), copy.getBias());
+	}
+}
@@ -1,14 +1,24 @@
 package com;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 
+import com.compute.QuantizedMatrix;
+import com.llm.BatchTrainer;
+import com.llm.DataLoader;
 import com.llm.EmbeddingGenerator;
+import com.llm.NGramDraftModel;
 import com.llm.PositionalEncoder;
+import com.llm.Sampler;
 import com.llm.SimpleTokenizer;
+import com.llm.SpeculativeDecoder;
+import com.llm.TokenListener;
+import com.llm.TokenShard;
 import com.llm.TransformerModel;
+import com.server.InferenceServer;
 import com.util.UrlContentReader;
 
 public class LLM {
@@ -36,47 +46,92 @@ public class LLM {
         }
 		TransformerModel transformerModel = new TransformerModel(tokenizer, tokenVectorDimension);
 		
-		List<String> trainingSequences = new ArrayList<>();
-        String[] sentences = rawText.split("\\. "); // Simple sentence splitting
-        System.out.println("Total sentences: " + sentences.length);
-        int totalAddedSentencesPrinted = 0;
-        int totalSkippedSentencesPrinted = 0;
-        for (String sentence : sentences) {
-            if (sentence.length() > 20) { // Ignore very short sentences
-            	if(totalAddedSentencesPrinted<3) {
-            	    System.out.println("adding sentence: " + sentence);
-            	    totalAddedSentencesPrinted++;
-            	}
-                trainingSequences.add(sentence);
-            } else if(totalSkippedSentencesPrinted<3) {
-				totalSkippedSentencesPrinted++;
-				System.out.println("skipping sentence: " + sentence);
-			}
-        }
+        int batchSize = Integer.getInteger("llm.batchSize", 8);
+        int trainThreads = Integer.getInteger("llm.trainThreads", Runtime.getRuntime().availableProcessors());
+        Integer lookahead = Integer.getInteger("llm.speculative");
+        NGramDraftModel draftModel = null;
         
-        System.out.println("Starting training with " + trainingSequences.size() + " sequences.");
-        int epochs = 5;
-        for (int epoch = 0; epoch < epochs; epoch++) {
-            System.out.println("\nEpoch " + (epoch + 1));
+        // Tokenize the corpus once into a memory-mapped shard that every epoch streams from
+        try (TokenShard shard = TokenShard.build(Path.of("data.txt"), tokenizer, Path.of("data.tokens"),
+                transformerModel.getMaxContextLength(), trainThreads);
+                BatchTrainer trainer = new BatchTrainer(transformerModel, batchSize, trainThreads);
+                DataLoader loader = new DataLoader(shard, batchSize, Integer.getInteger("llm.loaderThreads", 2),
+                        Integer.getInteger("llm.prefetchBatches", 4), 42)) {
+            System.out.println("Total sequences: " + shard.getSequenceCount() + ", tokens: " + shard.getTokenCount());
+            for (int sequence = 0; sequence < Math.min(3, shard.getSequenceCount()); sequence++) {
+                int[] tokenIds = shard.getSequence(sequence);
+                System.out.println("adding sequence: " + tokenizer.decodeToString(tokenIds, 0, tokenIds.length));
+            }
             
-            for (String sequence : trainingSequences) {
-                List<Integer> tokenIds = tokenizer.encode(sequence);
-                if (tokenIds.size() < 2) continue;
+            System.out.println("Starting training with " + shard.getSequenceCount() + " sequences, batch size " + batchSize + ", " + trainThreads + " threads.");
+            int epochs = 5;
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                System.out.println("\nEpoch " + (epoch + 1));
                 
-                // Split into input and target (predict next token)
-                List<Integer> inputs = tokenIds.subList(0, tokenIds.size()-1);
-                List<Integer> targets = tokenIds.subList(1, tokenIds.size());
+                trainer.resetStats();
+                loader.resetStats();
+                trainer.trainEpoch(loader);
+                System.out.printf("Trained on %d tokens, %.0f tokens/sec, %.1f ms waiting for data%n", trainer.getTokensProcessed(),
+                        trainer.getTokensPerSecond(), loader.getStallNanos() / 1e6);
                 
-                // Train on this sequence
-                transformerModel.train(inputs, targets);
+                // Test generation after each epoch
+                System.out.println("Sample generation after epoch " + (epoch+1) + ":");
+                System.out.println(transformerModel.generate("I think", 20));
             }
-            
-            // Test generation after each epoch
-            System.out.println("Sample generation after epoch " + (epoch+1) + ":");
-            System.out.println(transformerModel.generate("I think", 20));
+            if (lookahead != null) {
+                draftModel = NGramDraftModel.build(shard, Integer.getInteger("llm.draftOrder", 3));
+                System.out.println("Built n-gram draft model with " + draftModel.getContextCount() + " contexts");
+            }
+        } catch (IOException e) {
+            System.err.println("Could not tokenize the training corpus: " + e);
+            return;
         }
 		
 		//transformerModel.train(decoded, tokenVectorDimension);
+		String quantization = System.getProperty("llm.quantize");
+		if (quantization != null) {
+			transformerModel.quantize(QuantizedMatrix.Format.valueOf(quantization.toUpperCase()));
+			System.out.println("Quantized embeddings and output layer to " + quantization);
+		}
+		Sampler sampler = new Sampler(Double.parseDouble(System.getProperty("llm.temperature", "0.7")),
+				Integer.getInteger("llm.topK", 0), Double.parseDouble(System.getProperty("llm.topP", "1.0")));
+		Integer serverPort = Integer.getInteger("llm.serverPort");
+		if (serverPort != null) {
+			InferenceServer server;
+			try {
+				server = new InferenceServer(transformerModel, serverPort, Integer.getInteger("llm.maxBatchSize", 16),
+						Integer.getInteger("llm.maxQueueDepth", 256));
+			} catch (IOException e) {
+				System.err.println("Could not start the inference server: " + e);
+				return;
+			}
+			server.start();
+			System.out.println("Serving on http://localhost:" + server.getPort() + "/generate");
+			return;
+		}
+		SpeculativeDecoder decoder = null;
+		if (draftModel != null) {
+			decoder = new SpeculativeDecoder(transformerModel, draftModel, lookahead);
+			int[] promptIds = tokenizer.encodeToArray("I think");
+			// warm up both paths before timing them
+			for (int i = 0; i < 20; i++) {
+				transformerModel.generate(promptIds, 30, sampler.copy());
+				decoder.generate(promptIds, 30, sampler.copy());
+			}
+			decoder.resetStats();
+			long start = System.nanoTime();
+			for (int i = 0; i < 20; i++) {
+				transformerModel.generate(promptIds, 30, sampler.copy());
+			}
+			long plain = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < 20; i++) {
+				decoder.generate(promptIds, 30, sampler.copy());
+			}
+			long speculative = System.nanoTime() - start;
+			System.out.printf("Speculative decoding: %.0f%% of drafts accepted, %.2f tokens per pass, %.2fx speedup%n",
+					decoder.getAcceptanceRate() * 100, decoder.getTokensPerPass(), (double) plain / speculative);
+		}
 		String prompt = "";
 		Scanner scanner = new Scanner(System.in);
 		while (!prompt.equals("exit") && !prompt.equals("quit") && !prompt.equals("bye")) {
@@ -85,8 +140,18 @@ public class LLM {
 			if (prompt.equals("exit") || prompt.equals("quit") || prompt.equals("bye")) {
 				break;
 			}
-			String generated = transformerModel.generate(prompt, 30);
-			System.out.println("Generated: " + generated);
+			System.out.print("Generated: " + prompt);
+			TokenListener printer = (tokenId, token) -> {
+				System.out.print(" " + token);
+				System.out.flush();
+				return true;
+			};
+			if (decoder != null) {
+				decoder.generate(prompt, 30, sampler, printer);
+			} else {
+				transformerModel.generate(prompt, 30, sampler, List.of(), printer);
+			}
+			System.out.println();
 		}
 	}
 
@@ -0,0 +1,181 @@
+package com.compute;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A {@link Tensor} of doubles over one flat array, or over little-endian
+ * doubles in a memory segment.
+ */
+public final class DoubleTensor extends Tensor<DoubleTensor> {
+	private static final long serialVersionUID = 1L;
+
+	static final ValueLayout.OfDouble LAYOUT = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	private final double[] data;
+	// set instead of data for a tensor over a segment
+	private final transient MemorySegment segment;
+
+	private DoubleTensor(double[] data, MemorySegment segment, int[] shape, int[] strides, int offset) {
+		super(shape, strides, offset);
+		this.data = data;
+		this.segment = segment;
+	}
+
+	public static DoubleTensor zeros(int... shape) {
+		int[] checked = checkShape(shape);
+		return new DoubleTensor(new double[elementCount(checked)], null, checked, contiguousStrides(checked), 0);
+	}
+
+	/**
+	 * A contiguous tensor over an existing array, which must hold exactly the
+	 * shape's element count.
+	 */
+	public static DoubleTensor wrap(double[] data, int... shape) {
+		int[] checked = checkShape(shape);
+		if (data.length != elementCount(checked)) {
+			throw new IllegalArgumentException("Array of " + data.length + " doubles does not match shape "
+					+ Arrays.toString(shape));
+		}
+		return new DoubleTensor(data, null, checked, contiguousStrides(checked), 0);
+	}
+
+	/**
+	 * A contiguous tensor over little-endian doubles in a segment, e.g. part of
+	 * a mapped file, which must hold exactly the shape's element count. The
+	 * tensor reads the segment in place and is only usable while the segment's
+	 * arena is alive. Writes also go to the segment and need a writable one;
+	 * the tensors of a loaded checkpoint are over a read-only mapping, so
+	 * {@link #copy()} them before updating.
+	 */
+	public static DoubleTensor wrap(MemorySegment segment, int... shape) {
+		int[] checked = checkShape(shape);
+		if (segment.byteSize() != (long) elementCount(checked) * Double.BYTES) {
+			throw new IllegalArgumentException("Segment of " + segment.byteSize() + " bytes does not match shape "
+					+ Arrays.toString(shape));
+		}
+		return new DoubleTensor(null, segment, checked, contiguousStrides(checked), 0);
+	}
+
+	/**
+	 * Copies equally long rows into a new rows x cols tensor.
+	 */
+	public static DoubleTensor of(double[][] rows) {
+		int cols = rows.length == 0 ? 0 : rows[0].length;
+		DoubleTensor tensor = zeros(rows.length, cols);
+		for (int i = 0; i < rows.length; i++) {
+			if (rows[i].length != cols) {
+				throw new IllegalArgumentException("Row " + i + " has " + rows[i].length + " values, expected " + cols);
+			}
+			System.arraycopy(rows[i], 0, tensor.data, i * cols, cols);
+		}
+		return tensor;
+	}
+
+	@Override
+	DoubleTensor view(int[] shape, int[] strides, int offset) {
+		return new DoubleTensor(data, segment, shape, strides, offset);
+	}
+
+	@Override
+	Object storage() {
+		return segment != null ? segment : data;
+	}
+
+	/**
+	 * The backing array; elements are addressed through {@link #offset()} and
+	 * the strides.
+	 *
+	 * @throws IllegalStateException if the tensor is backed by a segment
+	 */
+	public double[] data() {
+		if (data == null) {
+			throw new IllegalStateException("Tensor is backed by a memory segment, not an array");
+		}
+		return data;
+	}
+
+	public double get(int row, int col) {
+		return valueAt(index(row, col));
+	}
+
+	public double get(int... indices) {
+		return valueAt(index(indices));
+	}
+
+	public void set(int row, int col, double value) {
+		setValueAt(index(row, col), value);
+	}
+
+	public void set(double value, int... indices) {
+		setValueAt(index(indices), value);
+	}
+
+	private double valueAt(int index) {
+		return segment != null ? segment.getAtIndex(LAYOUT, index) : data[index];
+	}
+
+	private void setValueAt(int index, double value) {
+		if (segment != null) {
+			segment.setAtIndex(LAYOUT, index, value);
+		} else {
+			data[index] = value;
+		}
+	}
+
+	/**
+	 * Copies backing elements [index, index + length) to dst, e.g. one row of
+	 * a contiguous matrix.
+	 */
+	public void copyTo(int index, double[] dst, int dstOffset, int length) {
+		if (segment != null) {
+			MemorySegment.copy(segment, LAYOUT, (long) index * Double.BYTES, dst, dstOffset, length);
+		} else {
+			System.arraycopy(data, index, dst, dstOffset, length);
+		}
+	}
+
+	/**
+	 * Same, narrowing each element to float.
+	 */
+	public void copyTo(int index, float[] dst, int dstOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset + i] = (float) valueAt(index + i);
+		}
+	}
+
+	@Override
+	public DoubleTensor copy() {
+		DoubleTensor copy = zeros(shape);
+		if (shape.length == 2 && strides[1] == 1) {
+			for (int i = 0; i < shape[0]; i++) {
+				copyTo(offset + i * strides[0], copy.data, i * shape[1], shape[1]);
+			}
+		} else {
+			int[] next = { 0 };
+			forEachIndex(index -> copy.data[next[0]++] = valueAt(index));
+		}
+		return copy;
+	}
+
+	/**
+	 * Copies a matrix out into separate rows.
+	 */
+	public double[][] toArray() {
+		checkRank(2);
+		double[][] rows = new double[shape[0]][shape[1]];
+		for (int i = 0; i < shape[0]; i++) {
+			for (int j = 0; j < shape[1]; j++) {
+				rows[i][j] = valueAt(offset + i * strides[0] + j * strides[1]);
+			}
+		}
+		return rows;
+	}
+
+	// a segment cannot be serialized, so a tensor over one is written as a heap copy
+	private Object writeReplace() {
+		return segment != null ? copy() : this;
+	}
+}
@@ -0,0 +1,181 @@
+package com.compute;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A {@link Tensor} of floats over one flat array, or over little-endian
+ * floats in a memory segment.
+ */
+public final class FloatTensor extends Tensor<FloatTensor> {
+	private static final long serialVersionUID = 1L;
+
+	static final ValueLayout.OfFloat LAYOUT = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	private final float[] data;
+	// set instead of data for a tensor over a segment
+	private final transient MemorySegment segment;
+
+	private FloatTensor(float[] data, MemorySegment segment, int[] shape, int[] strides, int offset) {
+		super(shape, strides, offset);
+		this.data = data;
+		this.segment = segment;
+	}
+
+	public static FloatTensor zeros(int... shape) {
+		int[] checked = checkShape(shape);
+		return new FloatTensor(new float[elementCount(checked)], null, checked, contiguousStrides(checked), 0);
+	}
+
+	/**
+	 * A contiguous tensor over an existing array, which must hold exactly the
+	 * shape's element count.
+	 */
+	public static FloatTensor wrap(float[] data, int... shape) {
+		int[] checked = checkShape(shape);
+		if (data.length != elementCount(checked)) {
+			throw new IllegalArgumentException("Array of " + data.length + " floats does not match shape "
+					+ Arrays.toString(shape));
+		}
+		return new FloatTensor(data, null, checked, contiguousStrides(checked), 0);
+	}
+
+	/**
+	 * A contiguous tensor over little-endian floats in a segment, e.g. part of
+	 * a mapped file, which must hold exactly the shape's element count. The
+	 * tensor reads the segment in place and is only usable while the segment's
+	 * arena is alive. Writes also go to the segment and need a writable one;
+	 * the tensors of a loaded checkpoint are over a read-only mapping, so
+	 * {@link #copy()} them before updating.
+	 */
+	public static FloatTensor wrap(MemorySegment segment, int... shape) {
+		int[] checked = checkShape(shape);
+		if (segment.byteSize() != (long) elementCount(checked) * Float.BYTES) {
+			throw new IllegalArgumentException("Segment of " + segment.byteSize() + " bytes does not match shape "
+					+ Arrays.toString(shape));
+		}
+		return new FloatTensor(null, segment, checked, contiguousStrides(checked), 0);
+	}
+
+	/**
+	 * Copies equally long rows into a new rows x cols tensor.
+	 */
+	public static FloatTensor of(float[][] rows) {
+		int cols = rows.length == 0 ? 0 : rows[0].length;
+		FloatTensor tensor = zeros(rows.length, cols);
+		for (int i = 0; i < rows.length; i++) {
+			if (rows[i].length != cols) {
+				throw new IllegalArgumentException("Row " + i + " has " + rows[i].length + " values, expected " + cols);
+			}
+			System.arraycopy(rows[i], 0, tensor.data, i * cols, cols);
+		}
+		return tensor;
+	}
+
+	@Override
+	FloatTensor view(int[] shape, int[] strides, int offset) {
+		return new FloatTensor(data, segment, shape, strides, offset);
+	}
+
+	@Override
+	Object storage() {
+		return segment != null ? segment : data;
+	}
+
+	/**
+	 * The backing array; elements are addressed through {@link #offset()} and
+	 * the strides.
+	 *
+	 * @throws IllegalStateException if the tensor is backed by a segment
+	 */
+	public float[] data() {
+		if (data == null) {
+			throw new IllegalStateException("Tensor is backed by a memory segment, not an array");
+		}
+		return data;
+	}
+
+	public float get(int row, int col) {
+		return valueAt(index(row, col));
+	}
+
+	public float get(int... indices) {
+		return valueAt(index(indices));
+	}
+
+	public void set(int row, int col, float value) {
+		setValueAt(index(row, col), value);
+	}
+
+	public void set(float value, int... indices) {
+		setValueAt(index(indices), value);
+	}
+
+	private float valueAt(int index) {
+		return segment != null ? segment.getAtIndex(LAYOUT, index) : data[index];
+	}
+
+	private void setValueAt(int index, float value) {
+		if (segment != null) {
+			segment.setAtIndex(LAYOUT, index, value);
+		} else {
+			data[index] = value;
+		}
+	}
+
+	/**
+	 * Copies backing elements [index, index + length) to dst, e.g. one row of
+	 * a contiguous matrix.
+	 */
+	public void copyTo(int index, float[] dst, int dstOffset, int length) {
+		if (segment != null) {
+			MemorySegment.copy(segment, LAYOUT, (long) index * Float.BYTES, dst, dstOffset, length);
+		} else {
+			System.arraycopy(data, index, dst, dstOffset, length);
+		}
+	}
+
+	/**
+	 * Same, widening each element to double.
+	 */
+	public void copyTo(int index, double[] dst, int dstOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset + i] = valueAt(index + i);
+		}
+	}
+
+	@Override
+	public FloatTensor copy() {
+		FloatTensor copy = zeros(shape);
+		if (shape.length == 2 && strides[1] == 1) {
+			for (int i = 0; i < shape[0]; i++) {
+				copyTo(offset + i * strides[0], copy.data, i * shape[1], shape[1]);
+			}
+		} else {
+			int[] next = { 0 };
+			forEachIndex(index -> copy.data[next[0]++] = valueAt(index));
+		}
+		return copy;
+	}
+
+	/**
+	 * Copies a matrix out into separate rows.
+	 */
+	public float[][] toArray() {
+		checkRank(2);
+		float[][] rows = new float[shape[0]][shape[1]];
+		for (int i = 0; i < shape[0]; i++) {
+			for (int j = 0; j < shape[1]; j++) {
+				rows[i][j] = valueAt(offset + i * strides[0] + j * strides[1]);
+			}
+		}
+		return rows;
+	}
+
+	// a segment cannot be serialized, so a tensor over one is written as a heap copy
+	private Object writeReplace() {
+		return segment != null ? copy() : this;
+	}
+}
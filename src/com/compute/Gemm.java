@@ -0,0 +1,563 @@
+package com.compute;
+
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * General matrix multiply shared by the model code (double) and the attention
+ * demos (float). Computes C += A x B where A is m x k and B is k x n. A third
+ * variant takes float A and B but sums into a double C, for float32 weights
+ * whose products should still be accumulated in double.
+ *
+ * Operands are either jagged arrays or 2-D {@link Tensor} views with any
+ * strides, so a transposed or sliced view is multiplied without first being
+ * copied: its elements are gathered while packing, which happens anyway. For
+ * the same reason A and B may be backed by a memory segment, e.g. weights in
+ * a mapped checkpoint. C must be backed by arrays with unit column stride.
+ *
+ * The loops are blocked so that a packed KC x NC panel of B stays in L2 and a
+ * packed MC x KC block of A stays in L1 while it is streamed over the panel.
+ * Large products are split into row blocks (or column blocks when there is
+ * only a handful of rows, e.g. a single hidden state times the output layer)
+ * and run on the common ForkJoinPool.
+ *
+ * Packing buffers and the operand descriptors of a call are kept per thread,
+ * so a product small enough to run on the calling thread allocates nothing;
+ * the parallel path only allocates its fork/join tasks.
+ */
+public final class Gemm {
+
+	static final int MC = 64;
+	static final int KC = 256;
+	static final int NC = 1024;
+
+	// below this many multiply-adds forking costs more than it saves
+	private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	private Gemm() {
+	}
+
+	public static double[][] multiply(double[][] a, double[][] b) {
+		checkDimensions(a.length, a.length == 0 ? 0 : a[0].length, b.length, b.length == 0 ? 0 : b[0].length);
+		double[][] c = new double[a.length][b[0].length];
+		multiplyAdd(a, b, c);
+		return c;
+	}
+
+	public static float[][] multiply(float[][] a, float[][] b) {
+		checkDimensions(a.length, a.length == 0 ? 0 : a[0].length, b.length, b.length == 0 ? 0 : b[0].length);
+		float[][] c = new float[a.length][b[0].length];
+		multiplyAdd(a, b, c);
+		return c;
+	}
+
+	/**
+	 * Row vector times matrix: x (1 x k) x B (k x n).
+	 */
+	public static double[] multiply(double[] x, double[][] b) {
+		checkDimensions(1, x.length, b.length, b.length == 0 ? 0 : b[0].length);
+		double[] result = new double[b[0].length];
+		multiplyAdd(new double[][] { x }, b, new double[][] { result });
+		return result;
+	}
+
+	public static DoubleTensor multiply(DoubleTensor a, DoubleTensor b) {
+		a.checkRank(2);
+		b.checkRank(2);
+		checkDimensions(a.size(0), a.size(1), b.size(0), b.size(1));
+		DoubleTensor c = DoubleTensor.zeros(a.size(0), b.size(1));
+		multiplyAdd(a, b, c);
+		return c;
+	}
+
+	public static FloatTensor multiply(FloatTensor a, FloatTensor b) {
+		a.checkRank(2);
+		b.checkRank(2);
+		checkDimensions(a.size(0), a.size(1), b.size(0), b.size(1));
+		FloatTensor c = FloatTensor.zeros(a.size(0), b.size(1));
+		multiplyAdd(a, b, c);
+		return c;
+	}
+
+	public static void multiplyAdd(double[][] a, double[][] b, double[][] c) {
+		Scratch s = SCRATCH.get();
+		run(Kind.DOUBLE, s.a.set(a), s.b.set(b), s.c.set(c), s);
+	}
+
+	public static void multiplyAdd(float[][] a, float[][] b, float[][] c) {
+		Scratch s = SCRATCH.get();
+		run(Kind.FLOAT, s.a.set(a), s.b.set(b), s.c.set(c), s);
+	}
+
+	/**
+	 * C += A x B with float operands and double accumulation. Reads half the
+	 * bytes of the double version, which is what bounds a skinny product such
+	 * as a few hidden states times the output layer.
+	 */
+	public static void multiplyAdd(float[][] a, float[][] b, double[][] c) {
+		Scratch s = SCRATCH.get();
+		run(Kind.MIXED, s.a.set(a), s.b.set(b), s.c.set(c), s);
+	}
+
+	public static void multiplyAdd(DoubleTensor a, DoubleTensor b, DoubleTensor c) {
+		multiplyAdd(a, b, c, a.size(0));
+	}
+
+	public static void multiplyAdd(FloatTensor a, FloatTensor b, FloatTensor c) {
+		Scratch s = SCRATCH.get();
+		run(Kind.FLOAT, s.a.set(a, a.size(0)), s.b.set(b, b.size(0)), s.c.set(c, c.size(0)), s);
+	}
+
+	public static void multiplyAdd(FloatTensor a, FloatTensor b, DoubleTensor c) {
+		multiplyAdd(a, b, c, a.size(0));
+	}
+
+	/**
+	 * C[0, rows) += A[0, rows) x B: only the first rows of A and C take part,
+	 * so buffers sized for the longest input can be reused for shorter ones
+	 * without creating views.
+	 */
+	public static void multiplyAdd(DoubleTensor a, DoubleTensor b, DoubleTensor c, int rows) {
+		Scratch s = SCRATCH.get();
+		run(Kind.DOUBLE, s.a.set(a, rows), s.b.set(b, b.size(0)), s.c.set(c, rows), s);
+	}
+
+	public static void multiplyAdd(FloatTensor a, FloatTensor b, DoubleTensor c, int rows) {
+		Scratch s = SCRATCH.get();
+		run(Kind.MIXED, s.a.set(a, rows), s.b.set(b, b.size(0)), s.c.set(c, rows), s);
+	}
+
+	/**
+	 * C += A x B into separate output rows, e.g. rows that belong to different
+	 * caches.
+	 */
+	public static void multiplyAdd(DoubleTensor a, DoubleTensor b, double[][] c) {
+		multiplyAdd(a, b, c, c.length);
+	}
+
+	public static void multiplyAdd(FloatTensor a, FloatTensor b, double[][] c) {
+		multiplyAdd(a, b, c, c.length);
+	}
+
+	/**
+	 * Same for the first rows of A into c[0, rows).
+	 */
+	public static void multiplyAdd(DoubleTensor a, DoubleTensor b, double[][] c, int rows) {
+		Scratch s = SCRATCH.get();
+		run(Kind.DOUBLE, s.a.set(a, rows), s.b.set(b, b.size(0)), s.c.set(c, rows), s);
+	}
+
+	public static void multiplyAdd(FloatTensor a, FloatTensor b, double[][] c, int rows) {
+		Scratch s = SCRATCH.get();
+		run(Kind.MIXED, s.a.set(a, rows), s.b.set(b, b.size(0)), s.c.set(c, rows), s);
+	}
+
+	private static void checkDimensions(int rowsA, int colsA, int rowsB, int colsB) {
+		if (rowsA == 0 || colsA == 0 || rowsB == 0 || colsB == 0 || colsA != rowsB) {
+			throw new IllegalArgumentException("Invalid dimensions for multiply: " + rowsA + " x " + colsA + " and "
+					+ rowsB + " x " + colsB);
+		}
+	}
+
+	// a, b and c are the calling thread's scratch operands
+	private static void run(Kind kind, Operand a, Operand b, Operand c, Scratch scratch) {
+		try {
+			if (a.cols != b.rows || c.rows != a.rows || c.cols != b.cols) {
+				throw new IllegalArgumentException("Invalid dimensions for multiply-add: " + a.rows + " x " + a.cols
+						+ " times " + b.rows + " x " + b.cols + " into " + c.rows + " x " + c.cols);
+			}
+			if (c.colStride != 1) {
+				throw new IllegalArgumentException("Output rows must have unit column stride");
+			}
+			if (c.data instanceof MemorySegment) {
+				throw new IllegalArgumentException("Output must be backed by an array");
+			}
+			if (a.rows == 0 || b.rows == 0 || b.cols == 0) {
+				return;
+			}
+			if ((long) a.rows * b.cols * b.rows < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+				multiplyBlock(kind, a, b, c, b.rows, 0, a.rows, 0, b.cols, scratch);
+			} else {
+				// the tasks get their own operands: while joining, this thread may run other products
+				ForkJoinPool.commonPool().invoke(new BlockTask(kind, a.copy(), b.copy(), c.copy(), b.rows, 0, a.rows, 0,
+						b.cols));
+			}
+		} finally {
+			scratch.release();
+		}
+	}
+
+	private enum Kind {
+		// double x double into double, float x float into float, float x float into double
+		DOUBLE, FLOAT, MIXED
+	}
+
+	/**
+	 * A matrix argument seen row by row: row r of a jagged array is rows[r]
+	 * from index 0, row r of a tensor starts at offset + r * rowStride of the
+	 * shared backing array. Reused from call to call through {@link Scratch}.
+	 */
+	private static final class Operand {
+		Object[] jagged;
+		Object data;
+		int offset;
+		int rowStride;
+		int colStride;
+		int rows;
+		int cols;
+
+		Operand set(double[][] matrix) {
+			return set(matrix, matrix.length);
+		}
+
+		Operand set(float[][] matrix) {
+			return set(matrix, matrix.length);
+		}
+
+		Operand set(Object[] matrix, int rows) {
+			if (rows < 0 || rows > matrix.length) {
+				throw new IllegalArgumentException("Row count " + rows + " out of range for " + matrix.length + " rows");
+			}
+			this.jagged = matrix;
+			this.data = null;
+			this.offset = 0;
+			this.rowStride = 0;
+			this.colStride = 1;
+			this.rows = rows;
+			this.cols = matrix.length == 0 ? 0 : matrix[0] instanceof double[] row ? row.length : ((float[]) matrix[0]).length;
+			return this;
+		}
+
+		Operand set(Tensor<?> tensor, int rows) {
+			tensor.checkRank(2);
+			if (rows < 0 || rows > tensor.size(0)) {
+				throw new IllegalArgumentException("Row count " + rows + " out of range for " + tensor);
+			}
+			this.jagged = null;
+			this.data = tensor.storage();
+			this.offset = tensor.offset();
+			this.rowStride = tensor.stride(0);
+			this.colStride = tensor.stride(1);
+			this.rows = rows;
+			this.cols = tensor.size(1);
+			return this;
+		}
+
+		Operand copy() {
+			Operand copy = new Operand();
+			copy.jagged = jagged;
+			copy.data = data;
+			copy.offset = offset;
+			copy.rowStride = rowStride;
+			copy.colStride = colStride;
+			copy.rows = rows;
+			copy.cols = cols;
+			return copy;
+		}
+
+		void clear() {
+			jagged = null;
+			data = null;
+		}
+
+		// only called on C, which run() checks is array-backed
+		Object array(int row) {
+			return jagged != null ? jagged[row] : data;
+		}
+
+		int base(int row) {
+			return jagged != null ? 0 : offset + row * rowStride;
+		}
+
+		/**
+		 * Copies elements [col, col + length) of one row to dst.
+		 */
+		void pack(int row, int col, Object dst, int dstOffset, int length) {
+			Object src = array(row);
+			int start = base(row) + col * colStride;
+			if (src instanceof MemorySegment segment) {
+				packSegment(segment, start, dst, dstOffset, length);
+			} else if (colStride == 1) {
+				System.arraycopy(src, start, dst, dstOffset, length);
+			} else if (src instanceof double[] values) {
+				double[] out = (double[]) dst;
+				for (int j = 0; j < length; j++) {
+					out[dstOffset + j] = values[start + j * colStride];
+				}
+			} else {
+				float[] values = (float[]) src;
+				float[] out = (float[]) dst;
+				for (int j = 0; j < length; j++) {
+					out[dstOffset + j] = values[start + j * colStride];
+				}
+			}
+		}
+
+		// the segment's element type matches dst, as for arrays
+		private void packSegment(MemorySegment segment, int start, Object dst, int dstOffset, int length) {
+			if (dst instanceof double[] out) {
+				if (colStride == 1) {
+					MemorySegment.copy(segment, DoubleTensor.LAYOUT, (long) start * Double.BYTES, out, dstOffset, length);
+				} else {
+					for (int j = 0; j < length; j++) {
+						out[dstOffset + j] = segment.getAtIndex(DoubleTensor.LAYOUT, start + (long) j * colStride);
+					}
+				}
+			} else {
+				float[] out = (float[]) dst;
+				if (colStride == 1) {
+					MemorySegment.copy(segment, FloatTensor.LAYOUT, (long) start * Float.BYTES, out, dstOffset, length);
+				} else {
+					for (int j = 0; j < length; j++) {
+						out[dstOffset + j] = segment.getAtIndex(FloatTensor.LAYOUT, start + (long) j * colStride);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Per-thread packing buffers, created for a kind the first time the thread
+	 * multiplies it, and the operands of the thread's current call.
+	 */
+	private static final class Scratch {
+		final Operand a = new Operand();
+		final Operand b = new Operand();
+		final Operand c = new Operand();
+		double[] packedADouble;
+		double[] packedBDouble;
+		float[] packedAFloat;
+		float[] packedBFloat;
+
+		Object packedA(Kind kind) {
+			if (kind == Kind.DOUBLE) {
+				return packedADouble != null ? packedADouble : (packedADouble = new double[MC * KC]);
+			}
+			return packedAFloat != null ? packedAFloat : (packedAFloat = new float[MC * KC]);
+		}
+
+		Object packedB(Kind kind) {
+			if (kind == Kind.DOUBLE) {
+				return packedBDouble != null ? packedBDouble : (packedBDouble = new double[KC * NC]);
+			}
+			return packedBFloat != null ? packedBFloat : (packedBFloat = new float[KC * NC]);
+		}
+
+		// drop the references to the caller's arrays
+		void release() {
+			a.clear();
+			b.clear();
+			c.clear();
+		}
+	}
+
+	/**
+	 * A rectangle [rowStart,rowEnd) x [colStart,colEnd) of C. Splits rows first,
+	 * then columns, until a block is small enough to run on one thread.
+	 */
+	private static final class BlockTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Kind kind;
+		final transient Operand a;
+		final transient Operand b;
+		final transient Operand c;
+		final int depth;
+		final int rowStart;
+		final int rowEnd;
+		final int colStart;
+		final int colEnd;
+
+		BlockTask(Kind kind, Operand a, Operand b, Operand c, int depth, int rowStart, int rowEnd, int colStart,
+				int colEnd) {
+			this.kind = kind;
+			this.a = a;
+			this.b = b;
+			this.c = c;
+			this.depth = depth;
+			this.rowStart = rowStart;
+			this.rowEnd = rowEnd;
+			this.colStart = colStart;
+			this.colEnd = colEnd;
+		}
+
+		long work() {
+			return (long) (rowEnd - rowStart) * (colEnd - colStart) * depth;
+		}
+
+		BlockTask slice(int rowStart, int rowEnd, int colStart, int colEnd) {
+			return new BlockTask(kind, a, b, c, depth, rowStart, rowEnd, colStart, colEnd);
+		}
+
+		@Override
+		protected void compute() {
+			int rows = rowEnd - rowStart;
+			int cols = colEnd - colStart;
+			if (work() < PARALLEL_THRESHOLD) {
+				multiplyBlock(kind, a, b, c, depth, rowStart, rowEnd, colStart, colEnd, SCRATCH.get());
+			} else if (rows > MC) {
+				int mid = rowStart + Math.max(MC, (rows / 2) / MC * MC);
+				invokeAll(slice(rowStart, mid, colStart, colEnd), slice(mid, rowEnd, colStart, colEnd));
+			} else if (cols >= NC / 2) {
+				int mid = colStart + cols / 2;
+				invokeAll(slice(rowStart, rowEnd, colStart, mid), slice(rowStart, rowEnd, mid, colEnd));
+			} else {
+				multiplyBlock(kind, a, b, c, depth, rowStart, rowEnd, colStart, colEnd, SCRATCH.get());
+			}
+		}
+	}
+
+	private static void multiplyBlock(Kind kind, Operand a, Operand b, Operand c, int depth, int rowStart, int rowEnd,
+			int colStart, int colEnd, Scratch scratch) {
+		Object packedA = scratch.packedA(kind);
+		Object packedB = scratch.packedB(kind);
+		for (int jc = colStart; jc < colEnd; jc += NC) {
+			int nc = Math.min(NC, colEnd - jc);
+			for (int pc = 0; pc < depth; pc += KC) {
+				int kc = Math.min(KC, depth - pc);
+				for (int p = 0; p < kc; p++) {
+					b.pack(pc + p, jc, packedB, p * nc, nc);
+				}
+				for (int ic = rowStart; ic < rowEnd; ic += MC) {
+					int mc = Math.min(MC, rowEnd - ic);
+					for (int i = 0; i < mc; i++) {
+						a.pack(ic + i, pc, packedA, i * kc, kc);
+					}
+					switch (kind) {
+					case DOUBLE -> kernel(c, (double[]) packedA, (double[]) packedB, ic, mc, jc, nc, kc);
+					case FLOAT -> kernel(c, (float[]) packedA, (float[]) packedB, ic, mc, jc, nc, kc);
+					case MIXED -> mixedKernel(c, (float[]) packedA, (float[]) packedB, ic, mc, jc, nc, kc);
+					}
+				}
+			}
+		}
+	}
+
+	// four rows of C at a time so every element loaded from the B panel is used four times
+	private static void kernel(Operand c, double[] packedA, double[] packedB, int ic, int mc, int jc, int nc, int kc) {
+		int i = 0;
+		for (; i + 3 < mc; i += 4) {
+			double[] c0 = (double[]) c.array(ic + i);
+			double[] c1 = (double[]) c.array(ic + i + 1);
+			double[] c2 = (double[]) c.array(ic + i + 2);
+			double[] c3 = (double[]) c.array(ic + i + 3);
+			int o0 = c.base(ic + i) + jc;
+			int o1 = c.base(ic + i + 1) + jc;
+			int o2 = c.base(ic + i + 2) + jc;
+			int o3 = c.base(ic + i + 3) + jc;
+			int a0 = i * kc;
+			for (int p = 0; p < kc; p++) {
+				double x0 = packedA[a0 + p];
+				double x1 = packedA[a0 + kc + p];
+				double x2 = packedA[a0 + 2 * kc + p];
+				double x3 = packedA[a0 + 3 * kc + p];
+				int bo = p * nc;
+				for (int j = 0; j < nc; j++) {
+					double y = packedB[bo + j];
+					c0[o0 + j] += x0 * y;
+					c1[o1 + j] += x1 * y;
+					c2[o2 + j] += x2 * y;
+					c3[o3 + j] += x3 * y;
+				}
+			}
+		}
+		for (; i < mc; i++) {
+			double[] c0 = (double[]) c.array(ic + i);
+			int o0 = c.base(ic + i) + jc;
+			int a0 = i * kc;
+			for (int p = 0; p < kc; p++) {
+				double x0 = packedA[a0 + p];
+				int bo = p * nc;
+				for (int j = 0; j < nc; j++) {
+					c0[o0 + j] += x0 * packedB[bo + j];
+				}
+			}
+		}
+	}
+
+	private static void kernel(Operand c, float[] packedA, float[] packedB, int ic, int mc, int jc, int nc, int kc) {
+		int i = 0;
+		for (; i + 3 < mc; i += 4) {
+			float[] c0 = (float[]) c.array(ic + i);
+			float[] c1 = (float[]) c.array(ic + i + 1);
+			float[] c2 = (float[]) c.array(ic + i + 2);
+			float[] c3 = (float[]) c.array(ic + i + 3);
+			int o0 = c.base(ic + i) + jc;
+			int o1 = c.base(ic + i + 1) + jc;
+			int o2 = c.base(ic + i + 2) + jc;
+			int o3 = c.base(ic + i + 3) + jc;
+			int a0 = i * kc;
+			for (int p = 0; p < kc; p++) {
+				float x0 = packedA[a0 + p];
+				float x1 = packedA[a0 + kc + p];
+				float x2 = packedA[a0 + 2 * kc + p];
+				float x3 = packedA[a0 + 3 * kc + p];
+				int bo = p * nc;
+				for (int j = 0; j < nc; j++) {
+					float y = packedB[bo + j];
+					c0[o0 + j] += x0 * y;
+					c1[o1 + j] += x1 * y;
+					c2[o2 + j] += x2 * y;
+					c3[o3 + j] += x3 * y;
+				}
+			}
+		}
+		for (; i < mc; i++) {
+			float[] c0 = (float[]) c.array(ic + i);
+			int o0 = c.base(ic + i) + jc;
+			int a0 = i * kc;
+			for (int p = 0; p < kc; p++) {
+				float x0 = packedA[a0 + p];
+				int bo = p * nc;
+				for (int j = 0; j < nc; j++) {
+					c0[o0 + j] += x0 * packedB[bo + j];
+				}
+			}
+		}
+	}
+
+	// products of two floats are exact in double, so only the sums round
+	private static void mixedKernel(Operand c, float[] packedA, float[] packedB, int ic, int mc, int jc, int nc, int kc) {
+		int i = 0;
+		for (; i + 3 < mc; i += 4) {
+			double[] c0 = (double[]) c.array(ic + i);
+			double[] c1 = (double[]) c.array(ic + i + 1);
+			double[] c2 = (double[]) c.array(ic + i + 2);
+			double[] c3 = (double[]) c.array(ic + i + 3);
+			int o0 = c.base(ic + i) + jc;
+			int o1 = c.base(ic + i + 1) + jc;
+			int o2 = c.base(ic + i + 2) + jc;
+			int o3 = c.base(ic + i + 3) + jc;
+			int a0 = i * kc;
+			for (int p = 0; p < kc; p++) {
+				double x0 = packedA[a0 + p];
+				double x1 = packedA[a0 + kc + p];
+				double x2 = packedA[a0 + 2 * kc + p];
+				double x3 = packedA[a0 + 3 * kc + p];
+				int bo = p * nc;
+				for (int j = 0; j < nc; j++) {
+					double y = packedB[bo + j];
+					c0[o0 + j] += x0 * y;
+					c1[o1 + j] += x1 * y;
+					c2[o2 + j] += x2 * y;
+					c3[o3 + j] += x3 * y;
+				}
+			}
+		}
+		for (; i < mc; i++) {
+			double[] c0 = (double[]) c.array(ic + i);
+			int o0 = c.base(ic + i) + jc;
+			int a0 = i * kc;
+			for (int p = 0; p < kc; p++) {
+				double x0 = packedA[a0 + p];
+				int bo = p * nc;
+				for (int j = 0; j < nc; j++) {
+					c0[o0 + j] += x0 * packedB[bo + j];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.compute;
+
+/**
+ * Elementwise kernels used by both model packages: max, exp-and-sum, scale and
+ * add, out of which the attention softmax and the sampler are built. The
+ * offset/length overloads work on one row of a contiguous tensor in place.
+ *
+ * When the jdk.incubator.vector module is present (run with
+ * {@code --add-modules jdk.incubator.vector}) the work is done in vector lanes
+ * by {@link VectorKernels}; otherwise the plain loops below are used. Setting
+ * {@code -Dllm.vector=false} forces the scalar path.
+ */
+public final class Kernels {
+
+	static final boolean VECTORIZED = vectorApiAvailable();
+
+	private Kernels() {
+	}
+
+	private static boolean vectorApiAvailable() {
+		if (!Boolean.parseBoolean(System.getProperty("llm.vector", "true"))) {
+			return false;
+		}
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			return false;
+		}
+		try {
+			return VectorKernels.FLOAT_LANES > 1;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	public static boolean isVectorized() {
+		return VECTORIZED;
+	}
+
+	/**
+	 * Largest of values[offset, offset + length).
+	 */
+	public static float max(float[] values, int offset, int length) {
+		if (VECTORIZED) {
+			return VectorKernels.max(values, offset, length);
+		}
+		float max = Float.NEGATIVE_INFINITY;
+		for (int i = offset; i < offset + length; i++) {
+			if (values[i] > max) {
+				max = values[i];
+			}
+		}
+		return max;
+	}
+
+	public static double max(double[] values) {
+		if (VECTORIZED) {
+			return VectorKernels.max(values);
+		}
+		double max = Double.NEGATIVE_INFINITY;
+		for (double value : values) {
+			if (value > max) {
+				max = value;
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Writes exp((src[i] - shift) * scale) to dst and returns the sum of what was
+	 * written. Each exponential is computed once.
+	 */
+	public static float expSum(float[] src, int srcOffset, float shift, float scale, float[] dst, int dstOffset,
+			int length) {
+		if (VECTORIZED) {
+			return VectorKernels.expSum(src, srcOffset, shift, scale, dst, dstOffset, length);
+		}
+		float sum = 0.0f;
+		for (int i = 0; i < length; i++) {
+			float e = (float) Math.exp((src[srcOffset + i] - shift) * scale);
+			dst[dstOffset + i] = e;
+			sum += e;
+		}
+		return sum;
+	}
+
+	public static double expSum(double[] src, double shift, double scale, double[] dst) {
+		if (VECTORIZED) {
+			return VectorKernels.expSum(src, shift, scale, dst);
+		}
+		double sum = 0.0;
+		for (int i = 0; i < src.length; i++) {
+			double e = Math.exp((src[i] - shift) * scale);
+			dst[i] = e;
+			sum += e;
+		}
+		return sum;
+	}
+
+	/**
+	 * Sum of exp((src[i] - shift) * scale) over all of src, without storing
+	 * the exponentials.
+	 */
+	public static double expSum(double[] src, double shift, double scale) {
+		if (VECTORIZED) {
+			return VectorKernels.expSum(src, shift, scale);
+		}
+		double sum = 0.0;
+		for (double value : src) {
+			sum += Math.exp((value - shift) * scale);
+		}
+		return sum;
+	}
+
+	/**
+	 * dst[i] = src[i] * factor. src and dst may be the same array.
+	 */
+	public static void scale(float[] src, float factor, float[] dst) {
+		scale(src, 0, factor, dst, 0, src.length);
+	}
+
+	public static void scale(float[] src, int srcOffset, float factor, float[] dst, int dstOffset, int length) {
+		if (VECTORIZED) {
+			VectorKernels.scale(src, srcOffset, factor, dst, dstOffset, length);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset + i] = src[srcOffset + i] * factor;
+		}
+	}
+
+	/**
+	 * dst[i] = a[i] + b[i]. dst may alias either input.
+	 */
+	public static void add(float[] a, float[] b, float[] dst) {
+		add(a, 0, b, 0, dst, 0, dst.length);
+	}
+
+	public static void add(float[] a, int aOffset, float[] b, int bOffset, float[] dst, int dstOffset, int length) {
+		if (VECTORIZED) {
+			VectorKernels.add(a, aOffset, b, bOffset, dst, dstOffset, length);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset + i] = a[aOffset + i] + b[bOffset + i];
+		}
+	}
+
+	public static void add(double[] a, double[] b, double[] dst) {
+		add(a, 0, b, 0, dst, 0, dst.length);
+	}
+
+	/**
+	 * dst[dstOffset + i] = a[aOffset + i] + b[bOffset + i] for i &lt; length.
+	 */
+	public static void add(double[] a, int aOffset, double[] b, int bOffset, double[] dst, int dstOffset, int length) {
+		if (VECTORIZED) {
+			VectorKernels.add(a, aOffset, b, bOffset, dst, dstOffset, length);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset + i] = a[aOffset + i] + b[bOffset + i];
+		}
+	}
+}
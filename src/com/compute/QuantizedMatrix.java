@@ -0,0 +1,175 @@
+package com.compute;
+
+import java.util.Arrays;
+
+/**
+ * Read-only, post-training compressed copy of a weight matrix for inference.
+ * INT8 stores one byte per weight with a float scale per row; BFLOAT16 keeps
+ * the top 16 bits of each float. Values are dequantized on the fly inside the
+ * kernels, so the full-precision matrix never has to be rebuilt.
+ */
+public final class QuantizedMatrix {
+
+	public enum Format {
+		INT8, BFLOAT16
+	}
+
+	private final Format format;
+	private final int rows;
+	private final int cols;
+	private final byte[] int8;
+	private final float[] rowScales;
+	private final short[] bfloat16;
+
+	private QuantizedMatrix(Format format, int rows, int cols, byte[] int8, float[] rowScales, short[] bfloat16) {
+		this.format = format;
+		this.rows = rows;
+		this.cols = cols;
+		this.int8 = int8;
+		this.rowScales = rowScales;
+		this.bfloat16 = bfloat16;
+	}
+
+	public static QuantizedMatrix quantize(DoubleTensor matrix, Format format) {
+		matrix.checkRank(2);
+		return quantize(matrix.size(0), matrix.size(1), matrix::get, format);
+	}
+
+	public static QuantizedMatrix quantize(FloatTensor matrix, Format format) {
+		matrix.checkRank(2);
+		return quantize(matrix.size(0), matrix.size(1), matrix::get, format);
+	}
+
+	private interface Source {
+		double get(int row, int col);
+	}
+
+	private static QuantizedMatrix quantize(int rows, int cols, Source matrix, Format format) {
+		if (format == Format.INT8) {
+			byte[] values = new byte[rows * cols];
+			float[] scales = new float[rows];
+			for (int r = 0; r < rows; r++) {
+				double maxAbs = 0;
+				for (int c = 0; c < cols; c++) {
+					maxAbs = Math.max(maxAbs, Math.abs(matrix.get(r, c)));
+				}
+				float scale = maxAbs == 0 ? 1.0f : (float) (maxAbs / 127.0);
+				scales[r] = scale;
+				for (int c = 0; c < cols; c++) {
+					long q = Math.round(matrix.get(r, c) / scale);
+					values[r * cols + c] = (byte) Math.max(-127, Math.min(127, q));
+				}
+			}
+			return new QuantizedMatrix(format, rows, cols, values, scales, null);
+		}
+		short[] values = new short[rows * cols];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				values[r * cols + c] = toBfloat16((float) matrix.get(r, c));
+			}
+		}
+		return new QuantizedMatrix(format, rows, cols, null, null, values);
+	}
+
+	// round to nearest even on the 16 dropped mantissa bits
+	static short toBfloat16(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		if (Float.isNaN(value)) {
+			return (short) ((bits >>> 16) | 0x0040);
+		}
+		int rounding = ((bits >>> 16) & 1) + 0x7FFF;
+		return (short) ((bits + rounding) >>> 16);
+	}
+
+	static float fromBfloat16(short value) {
+		return Float.intBitsToFloat((value & 0xFFFF) << 16);
+	}
+
+	/**
+	 * Dequantizes one row into {@code out}.
+	 */
+	public void row(int row, double[] out) {
+		row(row, out, 0);
+	}
+
+	public void row(int row, double[] out, int offset) {
+		int base = row * cols;
+		if (format == Format.INT8) {
+			float scale = rowScales[row];
+			for (int c = 0; c < cols; c++) {
+				out[offset + c] = int8[base + c] * scale;
+			}
+		} else {
+			for (int c = 0; c < cols; c++) {
+				out[offset + c] = fromBfloat16(bfloat16[base + c]);
+			}
+		}
+	}
+
+	public void row(int row, float[] out, int offset) {
+		int base = row * cols;
+		if (format == Format.INT8) {
+			float scale = rowScales[row];
+			for (int c = 0; c < cols; c++) {
+				out[offset + c] = int8[base + c] * scale;
+			}
+		} else {
+			for (int c = 0; c < cols; c++) {
+				out[offset + c] = fromBfloat16(bfloat16[base + c]);
+			}
+		}
+	}
+
+	/**
+	 * out = x (1 x rows) times this matrix (rows x cols). Each row is streamed
+	 * once in its compressed form; the INT8 row scale is folded into x[row].
+	 */
+	public void vectorMultiply(double[] x, double[] out) {
+		if (x.length != rows) {
+			throw new IllegalArgumentException("Invalid dimensions for multiply: 1 x " + x.length + " and " + rows
+					+ " x " + cols);
+		}
+		vectorMultiply(x, 0, out);
+	}
+
+	/**
+	 * Same, with x read from x[xOffset, xOffset + rows), e.g. a tensor row.
+	 */
+	public void vectorMultiply(double[] x, int xOffset, double[] out) {
+		if (xOffset < 0 || x.length - xOffset < rows || out.length != cols) {
+			throw new IllegalArgumentException("Invalid dimensions for multiply: 1 x " + (x.length - xOffset) + " and "
+					+ rows + " x " + cols);
+		}
+		Arrays.fill(out, 0.0);
+		for (int r = 0; r < rows; r++) {
+			int base = r * cols;
+			if (format == Format.INT8) {
+				double s = x[xOffset + r] * rowScales[r];
+				for (int c = 0; c < cols; c++) {
+					out[c] += s * int8[base + c];
+				}
+			} else {
+				double s = x[xOffset + r];
+				for (int c = 0; c < cols; c++) {
+					out[c] += s * fromBfloat16(bfloat16[base + c]);
+				}
+			}
+		}
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	public int rows() {
+		return rows;
+	}
+
+	public int cols() {
+		return cols;
+	}
+
+	public long sizeInBytes() {
+		return format == Format.INT8 ? (long) rows * cols + 4L * rows : 2L * rows * cols;
+	}
+}
@@ -0,0 +1,286 @@
+package com.compute;
+
+import java.io.Serializable;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Shape and stride bookkeeping shared by {@link FloatTensor} and
+ * {@link DoubleTensor}. Element (i0, i1, ...) lives at
+ * {@code offset + i0 * stride(0) + i1 * stride(1) + ...} of one flat backing
+ * array. Transpose, slice, select and reshape only compute new metadata over
+ * the same array, so views never copy and writes through a view are seen by
+ * every other view of that array.
+ *
+ * A tensor can instead be backed by a {@link MemorySegment}, such as a slice of
+ * a mapped checkpoint, with the element at index i stored little-endian at
+ * byte i * element size. Views, element access and {@link Gemm} work the same
+ * on both; only {@code data()} needs an array. Serializing a tensor writes
+ * its shape, strides and offset with the backing array; one over a segment is
+ * written as a contiguous heap copy.
+ *
+ * @param <T> the concrete tensor type returned by the view methods
+ */
+public abstract class Tensor<T extends Tensor<T>> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	final int[] shape;
+	final int[] strides;
+	final int offset;
+
+	Tensor(int[] shape, int[] strides, int offset) {
+		this.shape = shape;
+		this.strides = strides;
+		this.offset = offset;
+	}
+
+	static int[] checkShape(int[] shape) {
+		if (shape.length == 0) {
+			throw new IllegalArgumentException("A tensor needs at least one dimension");
+		}
+		for (int size : shape) {
+			if (size < 0) {
+				throw new IllegalArgumentException("Negative size in shape " + Arrays.toString(shape));
+			}
+		}
+		return shape.clone();
+	}
+
+	static int[] contiguousStrides(int[] shape) {
+		int[] strides = new int[shape.length];
+		int stride = 1;
+		for (int dim = shape.length - 1; dim >= 0; dim--) {
+			strides[dim] = stride;
+			stride = Math.multiplyExact(stride, Math.max(1, shape[dim]));
+		}
+		return strides;
+	}
+
+	static int elementCount(int[] shape) {
+		int count = 1;
+		for (int size : shape) {
+			count = Math.multiplyExact(count, size);
+		}
+		return count;
+	}
+
+	abstract T view(int[] shape, int[] strides, int offset);
+
+	/**
+	 * The backing array or segment.
+	 */
+	abstract Object storage();
+
+	/**
+	 * A contiguous copy with the same shape.
+	 */
+	public abstract T copy();
+
+	@SuppressWarnings("unchecked")
+	private T self() {
+		return (T) this;
+	}
+
+	/**
+	 * Whether the tensor is backed by an array, which {@code data()} returns,
+	 * rather than by a segment.
+	 */
+	public boolean hasArray() {
+		return !(storage() instanceof MemorySegment);
+	}
+
+	/**
+	 * The backing segment; elements are addressed through {@link #offset()}
+	 * and the strides, like in the array.
+	 *
+	 * @throws IllegalStateException if the tensor is backed by an array
+	 */
+	public MemorySegment segment() {
+		if (!(storage() instanceof MemorySegment segment)) {
+			throw new IllegalStateException("Tensor is backed by an array, not a memory segment");
+		}
+		return segment;
+	}
+
+	public int rank() {
+		return shape.length;
+	}
+
+	public int size(int dim) {
+		return shape[dim];
+	}
+
+	public int[] shape() {
+		return shape.clone();
+	}
+
+	public int stride(int dim) {
+		return strides[dim];
+	}
+
+	/**
+	 * Index of element (0, 0, ...) in the backing array.
+	 */
+	public int offset() {
+		return offset;
+	}
+
+	public int elementCount() {
+		return elementCount(shape);
+	}
+
+	/**
+	 * Whether the elements are laid out densely in row-major order, so the view
+	 * covers backing indices [offset, offset + elementCount()).
+	 */
+	public boolean isContiguous() {
+		int expected = 1;
+		for (int dim = shape.length - 1; dim >= 0; dim--) {
+			if (shape[dim] != 1 && strides[dim] != expected) {
+				return false;
+			}
+			expected *= shape[dim];
+		}
+		return true;
+	}
+
+	/**
+	 * Backing array index of the element at the given position.
+	 */
+	public int index(int... indices) {
+		if (indices.length != shape.length) {
+			throw new IllegalArgumentException("Expected " + shape.length + " indices, got " + indices.length);
+		}
+		int index = offset;
+		for (int dim = 0; dim < shape.length; dim++) {
+			index += checkIndex(dim, indices[dim]) * strides[dim];
+		}
+		return index;
+	}
+
+	public int index(int row, int col) {
+		checkRank(2);
+		return offset + checkIndex(0, row) * strides[0] + checkIndex(1, col) * strides[1];
+	}
+
+	private int checkIndex(int dim, int index) {
+		if (index < 0 || index >= shape[dim]) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for dimension " + dim + " of size "
+					+ shape[dim]);
+		}
+		return index;
+	}
+
+	void checkRank(int rank) {
+		if (shape.length != rank) {
+			throw new IllegalStateException("Expected a rank " + rank + " tensor, got shape " + Arrays.toString(shape));
+		}
+	}
+
+	/**
+	 * The transpose of a matrix, as a view.
+	 */
+	public T transpose() {
+		checkRank(2);
+		return transpose(0, 1);
+	}
+
+	public T transpose(int dim0, int dim1) {
+		int[] newShape = shape.clone();
+		int[] newStrides = strides.clone();
+		newShape[dim0] = shape[dim1];
+		newShape[dim1] = shape[dim0];
+		newStrides[dim0] = strides[dim1];
+		newStrides[dim1] = strides[dim0];
+		return view(newShape, newStrides, offset);
+	}
+
+	/**
+	 * Indices [from, to) of one dimension, as a view.
+	 */
+	public T slice(int dim, int from, int to) {
+		if (from < 0 || to > shape[dim] || from > to) {
+			throw new IndexOutOfBoundsException("Slice [" + from + ", " + to + ") out of bounds for dimension " + dim
+					+ " of size " + shape[dim]);
+		}
+		int[] newShape = shape.clone();
+		newShape[dim] = to - from;
+		return view(newShape, strides.clone(), offset + from * strides[dim]);
+	}
+
+	/**
+	 * Fixes one index and drops that dimension, e.g. a matrix row.
+	 */
+	public T select(int dim, int index) {
+		if (shape.length == 1) {
+			throw new IllegalStateException("Cannot select from a rank 1 tensor");
+		}
+		checkIndex(dim, index);
+		int[] newShape = new int[shape.length - 1];
+		int[] newStrides = new int[shape.length - 1];
+		for (int d = 0, n = 0; d < shape.length; d++) {
+			if (d != dim) {
+				newShape[n] = shape[d];
+				newStrides[n++] = strides[d];
+			}
+		}
+		return view(newShape, newStrides, offset + index * strides[dim]);
+	}
+
+	public T row(int row) {
+		return select(0, row);
+	}
+
+	/**
+	 * The same elements in row-major order under a new shape, as a view. Only
+	 * contiguous tensors can be reshaped; call {@link #contiguous()} first
+	 * otherwise.
+	 */
+	public T reshape(int... newShape) {
+		int[] checked = checkShape(newShape);
+		if (elementCount(checked) != elementCount()) {
+			throw new IllegalArgumentException("Cannot reshape " + Arrays.toString(shape) + " to "
+					+ Arrays.toString(newShape));
+		}
+		if (!isContiguous()) {
+			throw new IllegalStateException("Cannot reshape a non-contiguous view; copy it first");
+		}
+		return view(checked, contiguousStrides(checked), offset);
+	}
+
+	/**
+	 * This tensor if it is already contiguous, otherwise a contiguous copy.
+	 */
+	public T contiguous() {
+		return isContiguous() ? self() : copy();
+	}
+
+	/**
+	 * Calls action with the backing index of every element, in row-major order.
+	 */
+	void forEachIndex(IntConsumer action) {
+		if (elementCount() == 0) {
+			return;
+		}
+		int[] position = new int[shape.length];
+		int index = offset;
+		while (true) {
+			action.accept(index);
+			int dim = shape.length - 1;
+			while (dim >= 0 && ++position[dim] == shape[dim]) {
+				index -= (shape[dim] - 1) * strides[dim];
+				position[dim--] = 0;
+			}
+			if (dim < 0) {
+				return;
+			}
+			index += strides[dim];
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + Arrays.toString(shape);
+	}
+}
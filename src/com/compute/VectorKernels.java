@@ -0,0 +1,135 @@
+package com.compute;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API versions of the {@link Kernels} loops. Only loaded when
+ * jdk.incubator.vector is in the boot layer.
+ */
+final class VectorKernels {
+
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+	static final int FLOAT_LANES = FLOATS.length();
+
+	private VectorKernels() {
+	}
+
+	static float max(float[] values, int offset, int length) {
+		int i = 0;
+		int bound = FLOATS.loopBound(length);
+		FloatVector acc = FloatVector.broadcast(FLOATS, Float.NEGATIVE_INFINITY);
+		for (; i < bound; i += FLOATS.length()) {
+			acc = acc.max(FloatVector.fromArray(FLOATS, values, offset + i));
+		}
+		float max = acc.reduceLanes(VectorOperators.MAX);
+		for (; i < length; i++) {
+			max = Math.max(max, values[offset + i]);
+		}
+		return max;
+	}
+
+	static double max(double[] values) {
+		int i = 0;
+		int bound = DOUBLES.loopBound(values.length);
+		DoubleVector acc = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+		for (; i < bound; i += DOUBLES.length()) {
+			acc = acc.max(DoubleVector.fromArray(DOUBLES, values, i));
+		}
+		double max = acc.reduceLanes(VectorOperators.MAX);
+		for (; i < values.length; i++) {
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+
+	static float expSum(float[] src, int srcOffset, float shift, float scale, float[] dst, int dstOffset, int length) {
+		int i = 0;
+		int bound = FLOATS.loopBound(length);
+		FloatVector acc = FloatVector.zero(FLOATS);
+		for (; i < bound; i += FLOATS.length()) {
+			FloatVector e = FloatVector.fromArray(FLOATS, src, srcOffset + i).sub(shift).mul(scale)
+					.lanewise(VectorOperators.EXP);
+			e.intoArray(dst, dstOffset + i);
+			acc = acc.add(e);
+		}
+		float sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			float e = (float) Math.exp((src[srcOffset + i] - shift) * scale);
+			dst[dstOffset + i] = e;
+			sum += e;
+		}
+		return sum;
+	}
+
+	static double expSum(double[] src, double shift, double scale, double[] dst) {
+		int i = 0;
+		int bound = DOUBLES.loopBound(src.length);
+		DoubleVector acc = DoubleVector.zero(DOUBLES);
+		for (; i < bound; i += DOUBLES.length()) {
+			DoubleVector e = DoubleVector.fromArray(DOUBLES, src, i).sub(shift).mul(scale).lanewise(VectorOperators.EXP);
+			e.intoArray(dst, i);
+			acc = acc.add(e);
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < src.length; i++) {
+			double e = Math.exp((src[i] - shift) * scale);
+			dst[i] = e;
+			sum += e;
+		}
+		return sum;
+	}
+
+	static double expSum(double[] src, double shift, double scale) {
+		int i = 0;
+		int bound = DOUBLES.loopBound(src.length);
+		DoubleVector acc = DoubleVector.zero(DOUBLES);
+		for (; i < bound; i += DOUBLES.length()) {
+			acc = acc.add(DoubleVector.fromArray(DOUBLES, src, i).sub(shift).mul(scale).lanewise(VectorOperators.EXP));
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < src.length; i++) {
+			sum += Math.exp((src[i] - shift) * scale);
+		}
+		return sum;
+	}
+
+	static void scale(float[] src, int srcOffset, float factor, float[] dst, int dstOffset, int length) {
+		int i = 0;
+		int bound = FLOATS.loopBound(length);
+		for (; i < bound; i += FLOATS.length()) {
+			FloatVector.fromArray(FLOATS, src, srcOffset + i).mul(factor).intoArray(dst, dstOffset + i);
+		}
+		for (; i < length; i++) {
+			dst[dstOffset + i] = src[srcOffset + i] * factor;
+		}
+	}
+
+	static void add(float[] a, int aOffset, float[] b, int bOffset, float[] dst, int dstOffset, int length) {
+		int i = 0;
+		int bound = FLOATS.loopBound(length);
+		for (; i < bound; i += FLOATS.length()) {
+			FloatVector.fromArray(FLOATS, a, aOffset + i).add(FloatVector.fromArray(FLOATS, b, bOffset + i))
+					.intoArray(dst, dstOffset + i);
+		}
+		for (; i < length; i++) {
+			dst[dstOffset + i] = a[aOffset + i] + b[bOffset + i];
+		}
+	}
+
+	static void add(double[] a, int aOffset, double[] b, int bOffset, double[] dst, int dstOffset, int length) {
+		int i = 0;
+		int bound = DOUBLES.loopBound(length);
+		for (; i < bound; i += DOUBLES.length()) {
+			DoubleVector.fromArray(DOUBLES, a, aOffset + i).add(DoubleVector.fromArray(DOUBLES, b, bOffset + i))
+					.intoArray(dst, dstOffset + i);
+		}
+		for (; i < length; i++) {
+			dst[dstOffset + i] = a[aOffset + i] + b[bOffset + i];
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.llm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Data-parallel mini-batch training for a {@link TransformerModel}. Each batch
+ * is split across worker threads; every worker runs the forward pass and
+ * gradient calculation for its share of sequences into its own gradient
+ * buffer, the buffers are summed pairwise in a tree, and the weights are
+ * updated once per batch.
+ */
+public class BatchTrainer implements AutoCloseable {
+	
+	private final TransformerModel model;
+	private final int batchSize;
+	private final int threads;
+	private final ExecutorService executor;
+	private final SparseGradient[] gradientBuffers;
+	
+	private long tokensProcessed;
+	private long nanosSpent;
+	
+	public BatchTrainer(TransformerModel model, int batchSize, int threads) {
+		if (batchSize <= 0 || threads <= 0) {
+			throw new IllegalArgumentException("Batch size and thread count must be positive");
+		}
+		this.model = model;
+		this.batchSize = batchSize;
+		this.threads = Math.min(threads, batchSize);
+		this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+			Thread t = new Thread(r, "batch-trainer");
+			t.setDaemon(true);
+			return t;
+		});
+		this.gradientBuffers = new SparseGradient[this.threads];
+		for (int i = 0; i < this.threads; i++) {
+			gradientBuffers[i] = model.newGradients();
+		}
+	}
+	
+	/**
+	 * Trains on every sequence once, batchSize sequences per weight update.
+	 * Sequences shorter than two tokens are skipped.
+	 */
+	public void trainEpoch(List<int[]> tokenSequences) {
+		List<int[]> batch = new ArrayList<>(batchSize);
+		for (int[] tokenIds : tokenSequences) {
+			if (tokenIds.length < 2) continue;
+			batch.add(tokenIds);
+			if (batch.size() == batchSize) {
+				trainBatch(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			trainBatch(batch);
+		}
+	}
+	
+	/**
+	 * Trains on every sequence of a pre-tokenized shard once, streaming
+	 * sequences out of the mapping batchSize at a time.
+	 */
+	public void trainEpoch(TokenShard shard) {
+		List<int[]> batch = new ArrayList<>(batchSize);
+		for (int sequence = 0; sequence < shard.getSequenceCount(); sequence++) {
+			if (shard.getSequenceLength(sequence) < 2) continue;
+			batch.add(shard.getSequence(sequence));
+			if (batch.size() == batchSize) {
+				trainBatch(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			trainBatch(batch);
+		}
+	}
+	
+	/**
+	 * Runs one shuffled epoch from a background loader, training on each batch
+	 * as soon as it is ready.
+	 */
+	public void trainEpoch(DataLoader loader) {
+		loader.startEpoch();
+		List<int[]> batch;
+		while ((batch = loader.nextBatch()) != null) {
+			trainBatch(batch);
+		}
+	}
+	
+	/**
+	 * One weight update from a batch of token sequences; each sequence is split
+	 * into inputs and next-token targets.
+	 */
+	public void trainBatch(List<int[]> batch) {
+		long start = System.nanoTime();
+		int workers = Math.min(threads, batch.size());
+		List<Callable<Integer>> shards = new ArrayList<>(workers);
+		for (int w = 0; w < workers; w++) {
+			SparseGradient gradients = gradientBuffers[w];
+			List<int[]> shard = batch.subList(w * batch.size() / workers, (w + 1) * batch.size() / workers);
+			shards.add(() -> {
+				gradients.clear();
+				int tokens = 0;
+				for (int[] tokenIds : shard) {
+					// Split into input and target (predict next token)
+					model.accumulateGradients(tokenIds, 0, tokenIds, 1, tokenIds.length - 1, gradients);
+					tokens += tokenIds.length - 1;
+				}
+				return tokens;
+			});
+		}
+		int tokens = 0;
+		for (Future<Integer> result : invokeAll(shards)) {
+			tokens += join(result);
+		}
+		
+		// Tree reduction: buffer[i] += buffer[i + stride] for stride 1, 2, 4, ...
+		for (int stride = 1; stride < workers; stride *= 2) {
+			List<Callable<Integer>> merges = new ArrayList<>();
+			for (int i = 0; i + stride < workers; i += 2 * stride) {
+				SparseGradient into = gradientBuffers[i];
+				SparseGradient from = gradientBuffers[i + stride];
+				merges.add(() -> {
+					into.add(from);
+					return 0;
+				});
+			}
+			for (Future<Integer> result : invokeAll(merges)) {
+				join(result);
+			}
+		}
+		model.applyGradients(gradientBuffers[0]);
+		
+		tokensProcessed += tokens;
+		nanosSpent += System.nanoTime() - start;
+	}
+	
+	private List<Future<Integer>> invokeAll(List<Callable<Integer>> tasks) {
+		try {
+			return executor.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while training", e);
+		}
+	}
+	
+	private static int join(Future<Integer> result) {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while training", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Training worker failed", e.getCause());
+		}
+	}
+	
+	public long getTokensProcessed() {
+		return tokensProcessed;
+	}
+	
+	public double getTokensPerSecond() {
+		return nanosSpent == 0 ? 0.0 : tokensProcessed * 1e9 / nanosSpent;
+	}
+	
+	public void resetStats() {
+		tokensProcessed = 0;
+		nanosSpent = 0;
+	}
+	
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+}
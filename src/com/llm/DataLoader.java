@@ -0,0 +1,190 @@
+package com.llm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background batch preparation for training. Each epoch the sequences of a
+ * {@link TokenShard} are shuffled, and producer threads copy them out of the
+ * mapping into ready-to-train batches of int arrays, keeping up to
+ * {@code prefetchBatches} of them in a bounded queue. The trainer only takes
+ * finished batches, so reading and slicing overlap with compute.
+ */
+public class DataLoader implements AutoCloseable {
+
+	// identity-compared end-of-epoch marker, one per producer
+	private static final List<int[]> END_OF_EPOCH = new ArrayList<>(0);
+
+	private final TokenShard shard;
+	private final int batchSize;
+	private final int producers;
+	private final long seed;
+	private final BlockingQueue<List<int[]>> queue;
+	private final ExecutorService executor;
+	private final AtomicInteger nextBatch = new AtomicInteger();
+
+	private int epoch;
+	private int[] order;
+	private int batchCount;
+	private int finishedProducers;
+	private boolean running;
+	private volatile RuntimeException failure;
+	private long stallNanos;
+
+	public DataLoader(TokenShard shard, int batchSize, int producers, int prefetchBatches, long seed) {
+		if (batchSize <= 0 || producers <= 0 || prefetchBatches <= 0) {
+			throw new IllegalArgumentException("Batch size, producer count and prefetch depth must be positive");
+		}
+		this.shard = shard;
+		this.batchSize = batchSize;
+		this.producers = producers;
+		this.seed = seed;
+		this.queue = new ArrayBlockingQueue<>(prefetchBatches + producers);
+		this.executor = Executors.newFixedThreadPool(producers, r -> {
+			Thread t = new Thread(r, "data-loader");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Shuffles the trainable sequences (two tokens or more) and starts filling
+	 * the queue with the next epoch's batches. A previous epoch that was not
+	 * consumed to the end is abandoned first.
+	 */
+	public void startEpoch() {
+		abandonEpoch();
+		int[] trainable = new int[shard.getSequenceCount()];
+		int count = 0;
+		for (int sequence = 0; sequence < shard.getSequenceCount(); sequence++) {
+			if (shard.getSequenceLength(sequence) >= 2) {
+				trainable[count++] = sequence;
+			}
+		}
+		Random random = new Random(seed + epoch++);
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = trainable[i];
+			trainable[i] = trainable[j];
+			trainable[j] = swap;
+		}
+		order = trainable;
+		batchCount = (count + batchSize - 1) / batchSize;
+		int total = count;
+		nextBatch.set(0);
+		finishedProducers = 0;
+		failure = null;
+		running = true;
+		for (int p = 0; p < producers; p++) {
+			executor.execute(() -> produce(total));
+		}
+	}
+
+	private void produce(int total) {
+		try {
+			int batch;
+			while ((batch = nextBatch.getAndIncrement()) < batchCount) {
+				int from = batch * batchSize;
+				int to = Math.min(from + batchSize, total);
+				List<int[]> sequences = new ArrayList<>(to - from);
+				for (int i = from; i < to; i++) {
+					sequences.add(shard.getSequence(order[i]));
+				}
+				queue.put(sequences);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		try {
+			queue.put(END_OF_EPOCH);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Blocks until a batch is ready; returns null once every batch of the
+	 * current epoch has been handed out.
+	 */
+	public List<int[]> nextBatch() {
+		if (!running) {
+			return null;
+		}
+		while (true) {
+			long start = System.nanoTime();
+			List<int[]> batch;
+			try {
+				batch = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for training data", e);
+			}
+			stallNanos += System.nanoTime() - start;
+			if (batch != END_OF_EPOCH) {
+				return batch;
+			}
+			if (++finishedProducers == producers) {
+				running = false;
+				if (failure != null) {
+					throw new IllegalStateException("Data loader failed", failure);
+				}
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Ends the current epoch early, e.g. after the consumer stopped or was
+	 * interrupted: producers stop after the batch they are on and whatever they
+	 * queued is dropped. Does nothing if no epoch is running.
+	 */
+	public void abandonEpoch() {
+		if (!running) {
+			return;
+		}
+		// producers taking another batch index now find none left
+		nextBatch.set(batchCount);
+		boolean interrupted = false;
+		while (finishedProducers < producers) {
+			try {
+				if (queue.take() == END_OF_EPOCH) {
+					finishedProducers++;
+				}
+			} catch (InterruptedException e) {
+				// the producers are about to finish, so wait for them anyway
+				interrupted = true;
+			}
+		}
+		running = false;
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Total time the consumer spent blocked in {@link #nextBatch()}.
+	 */
+	public long getStallNanos() {
+		return stallNanos;
+	}
+
+	public void resetStats() {
+		stallNanos = 0;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		queue.clear();
+		running = false;
+	}
+}
@@ -2,32 +2,141 @@ package com.llm;
 
 import java.util.Random;
 
+import com.compute.DoubleTensor;
+import com.compute.FloatTensor;
+import com.compute.QuantizedMatrix;
+
+/**
+ * Token embeddings: one contiguous vocabSize x tokenVectorDimension tensor in
+ * the model's precision, or its quantized copy after
+ * {@link #quantize(QuantizedMatrix.Format)}.
+ */
 public class EmbeddingGenerator {
 	
 	private int vocabSize;
 	private int tokenVectorDimension;
-	private double[][] embeddingMatrix;
+	private DoubleTensor embeddingMatrix;
+	// used instead of embeddingMatrix for FLOAT32
+	private FloatTensor floatEmbeddingMatrix;
+	private QuantizedMatrix quantizedMatrix;
 	
 	public EmbeddingGenerator(int vocabSize, int tokenVectorDimension) {
+		this(vocabSize, tokenVectorDimension, Precision.FLOAT64);
+	}
+
+	public EmbeddingGenerator(int vocabSize, int tokenVectorDimension, Precision precision) {
 		this.vocabSize = vocabSize;
 		this.tokenVectorDimension = tokenVectorDimension;
-		initializeEmbeddings();
+		initializeEmbeddings(precision);
+	}
+
+	/**
+	 * Wraps an existing, already trained contiguous matrix of vocabSize rows,
+	 * which may be backed by a mapped checkpoint.
+	 */
+	EmbeddingGenerator(DoubleTensor embeddingMatrix) {
+		this.vocabSize = embeddingMatrix.size(0);
+		this.tokenVectorDimension = embeddingMatrix.size(1);
+		this.embeddingMatrix = embeddingMatrix.contiguous();
+	}
+
+	EmbeddingGenerator(FloatTensor embeddingMatrix) {
+		this.vocabSize = embeddingMatrix.size(0);
+		this.tokenVectorDimension = embeddingMatrix.size(1);
+		this.floatEmbeddingMatrix = embeddingMatrix.contiguous();
 	}
 
+	/**
+	 * A copy of the embedding of tokenId.
+	 */
 	public double[] getEmbedding(int tokenId) {
+		double[] embedding = new double[tokenVectorDimension];
+		getEmbedding(tokenId, embedding, 0);
+		return embedding;
+	}
+
+	/**
+	 * Copies (or dequantizes) the embedding of tokenId into {@code out}.
+	 */
+	public void getEmbedding(int tokenId, double[] out) {
+		getEmbedding(tokenId, out, 0);
+	}
+
+	/**
+	 * Copies (or dequantizes) the embedding of tokenId into
+	 * out[offset, offset + dimension).
+	 */
+	public void getEmbedding(int tokenId, double[] out, int offset) {
+		checkTokenId(tokenId);
+		if (quantizedMatrix != null) {
+			quantizedMatrix.row(tokenId, out, offset);
+		} else if (floatEmbeddingMatrix != null) {
+			floatEmbeddingMatrix.copyTo(floatEmbeddingMatrix.offset() + tokenId * tokenVectorDimension, out, offset,
+					tokenVectorDimension);
+		} else {
+			embeddingMatrix.copyTo(embeddingMatrix.offset() + tokenId * tokenVectorDimension, out, offset,
+					tokenVectorDimension);
+		}
+	}
+
+	/**
+	 * Float version of {@link #getEmbedding(int, double[], int)}.
+	 */
+	public void getEmbedding(int tokenId, float[] out, int offset) {
+		checkTokenId(tokenId);
+		if (quantizedMatrix != null) {
+			quantizedMatrix.row(tokenId, out, offset);
+		} else if (floatEmbeddingMatrix != null) {
+			floatEmbeddingMatrix.copyTo(floatEmbeddingMatrix.offset() + tokenId * tokenVectorDimension, out, offset,
+					tokenVectorDimension);
+		} else {
+			embeddingMatrix.copyTo(embeddingMatrix.offset() + tokenId * tokenVectorDimension, out, offset,
+					tokenVectorDimension);
+		}
+	}
+
+	private void checkTokenId(int tokenId) {
 		if (tokenId < 0 || tokenId >= vocabSize) {
 			throw new IllegalArgumentException("Token ID out of range");
 		}
-		return embeddingMatrix[tokenId];
 	}
 
-	private void initializeEmbeddings() {
-		Random rand = new Random(42); // Fixed seed for reproducibility
-		embeddingMatrix = new double[vocabSize][tokenVectorDimension];
+	/**
+	 * Replaces the full-precision matrix with a quantized copy. Lookups keep
+	 * working but the embeddings can no longer be saved at full precision.
+	 */
+	void quantize(QuantizedMatrix.Format format) {
+		quantizedMatrix = floatEmbeddingMatrix != null ? QuantizedMatrix.quantize(floatEmbeddingMatrix, format)
+				: QuantizedMatrix.quantize(embeddingMatrix, format);
+		embeddingMatrix = null;
+		floatEmbeddingMatrix = null;
+	}
+
+	boolean isQuantized() {
+		return quantizedMatrix != null;
+	}
 
-		for (int i = 0; i < vocabSize; i++) {
-			for (int j = 0; j < tokenVectorDimension; j++) {
-				embeddingMatrix[i][j] = rand.nextGaussian() * 0.02; // Small random values
+	DoubleTensor getEmbeddingMatrix() {
+		return embeddingMatrix;
+	}
+
+	FloatTensor getFloatEmbeddingMatrix() {
+		return floatEmbeddingMatrix;
+	}
+
+	private void initializeEmbeddings(Precision precision) {
+		Random rand = new Random(42); // Fixed seed for reproducibility
+		if (precision == Precision.FLOAT32) {
+			floatEmbeddingMatrix = FloatTensor.zeros(vocabSize, tokenVectorDimension);
+			float[] values = floatEmbeddingMatrix.data();
+			for (int i = 0; i < values.length; i++) {
+				values[i] = (float) (rand.nextGaussian() * 0.02); // Small random values
+			}
+		} else {
+			embeddingMatrix = DoubleTensor.zeros(vocabSize, tokenVectorDimension);
+			double[] values = embeddingMatrix.data();
+			for (int i = 0; i < values.length; i++) {
+				values[i] = rand.nextGaussian() * 0.02; // Small random values
 			}
 		}
 	}
@@ -0,0 +1,154 @@
+package com.llm;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Decoding state of one prompt: its token ids so far, the cached projected
+ * states, the sampler and a logits buffer. Created by
+ * {@link TransformerModel#startGeneration} and advanced one token at a time by
+ * {@link TransformerModel#decodeStep}, which lets independent generations share
+ * batched forward passes.
+ *
+ * A generation ends after its token budget, when a stop sequence is sampled
+ * (the stop sequence itself is dropped), or when it is cancelled. Tokens are
+ * passed to the listener as they become final; ones that could still be the
+ * beginning of a stop sequence are held back until that is decided.
+ */
+public class Generation {
+	
+	private static final int[][] NO_STOP_SEQUENCES = new int[0][];
+	
+	private final int[] tokenIds;
+	private final int promptLength;
+	private int length;
+	private int emitted;
+	private boolean stopped;
+	private volatile boolean cancelled;
+	private final int[][] stopSequences;
+	private final TokenListener listener;
+	
+	final KeyValueCache cache;
+	final Sampler sampler;
+	final Random random;
+	final double[] logits;
+	// logits of a speculative step, one row per verified position
+	double[][] draftLogits = new double[0][];
+	
+	Generation(int[] promptIds, int maxNewTokens, int tokenVectorDimension, int vocabSize, Sampler sampler, Random random,
+			int[][] stopSequences, TokenListener listener) {
+		this.tokenIds = Arrays.copyOf(promptIds, promptIds.length + maxNewTokens);
+		this.promptLength = promptIds.length;
+		this.length = promptIds.length;
+		this.emitted = promptIds.length;
+		this.cache = new KeyValueCache(tokenVectorDimension, tokenIds.length);
+		this.sampler = sampler;
+		this.random = random;
+		this.logits = new double[vocabSize];
+		this.stopSequences = stopSequences == null ? NO_STOP_SEQUENCES : stopSequences;
+		this.listener = listener;
+	}
+	
+	void append(int tokenId) {
+		tokenIds[length++] = tokenId;
+		for (int[] stop : stopSequences) {
+			if (stop.length > 0 && endsWith(stop, stop.length)) {
+				length -= stop.length;
+				stopped = true;
+				return;
+			}
+		}
+	}
+	
+	// whether the generated tokens end with the first count ids of sequence
+	private boolean endsWith(int[] sequence, int count) {
+		if (count > length - promptLength) {
+			return false;
+		}
+		for (int i = 0; i < count; i++) {
+			if (tokenIds[length - count + i] != sequence[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Passes every token that is now final to the listener.
+	 */
+	void emit(SimpleTokenizer tokenizer) {
+		if (listener == null || cancelled) {
+			return;
+		}
+		int ready = length;
+		if (!isFinished()) {
+			for (int[] stop : stopSequences) {
+				for (int partial = Math.min(stop.length - 1, ready - emitted); partial > 0; partial--) {
+					if (endsWith(stop, partial)) {
+						ready = Math.min(ready, length - partial);
+						break;
+					}
+				}
+			}
+		}
+		while (emitted < ready) {
+			int tokenId = tokenIds[emitted++];
+			if (!listener.onToken(tokenId, tokenizer.getToken(tokenId))) {
+				cancel();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Stops the generation before its next token. Safe to call from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * True once a stop sequence was generated.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+	
+	public boolean isFinished() {
+		return cancelled || stopped || length == tokenIds.length;
+	}
+	
+	public int getPromptLength() {
+		return promptLength;
+	}
+	
+	public int getGeneratedCount() {
+		return length - promptLength;
+	}
+	
+	int tokenAt(int index) {
+		return tokenIds[index];
+	}
+	
+	/**
+	 * Number of tokens that can still be generated.
+	 */
+	int remaining() {
+		return tokenIds.length - length;
+	}
+	
+	public int getLastToken() {
+		return tokenIds[length - 1];
+	}
+	
+	/**
+	 * Prompt ids followed by every id generated so far.
+	 */
+	public int[] getTokenIds() {
+		return Arrays.copyOf(tokenIds, length);
+	}
+}
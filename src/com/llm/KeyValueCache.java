@@ -0,0 +1,56 @@
+package com.llm;
+
+import java.util.Arrays;
+
+/**
+ * Per-generation cache of the projected hidden state of every position decoded
+ * so far. In this model the attention output of a position depends only on its
+ * own token and position, so once a row is cached it never has to be recomputed
+ * and each decode step only projects the newest token. The cached rows are the
+ * keys/values a fuller attention layer would read back. Rows for the initial
+ * capacity are allocated up front, so filling them during decode steps
+ * allocates nothing.
+ */
+public class KeyValueCache {
+	
+	private final int tokenVectorDimension;
+	private double[][] states;
+	private int length;
+	
+	public KeyValueCache(int tokenVectorDimension, int initialCapacity) {
+		this.tokenVectorDimension = tokenVectorDimension;
+		this.states = new double[Math.max(1, initialCapacity)][tokenVectorDimension];
+	}
+	
+	/**
+	 * Returns the row for the next position, to be filled in by the caller.
+	 */
+	public double[] nextSlot() {
+		if (length == states.length) {
+			states = Arrays.copyOf(states, states.length * 2);
+		}
+		if (states[length] == null) {
+			states[length] = new double[tokenVectorDimension];
+		}
+		return states[length++];
+	}
+	
+	public double[] get(int pos) {
+		if (pos < 0 || pos >= length) {
+			throw new IndexOutOfBoundsException("Position " + pos + " not cached, length " + length);
+		}
+		return states[pos];
+	}
+	
+	public double[] last() {
+		return get(length - 1);
+	}
+	
+	public int size() {
+		return length;
+	}
+	
+	public void clear() {
+		length = 0;
+	}
+}
@@ -0,0 +1,230 @@
+package com.llm;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.compute.DoubleTensor;
+import com.compute.FloatTensor;
+
+/**
+ * Versioned binary checkpoint for a {@link TransformerModel}. All values are
+ * little-endian:
+ * 
+ * <pre>
+ * int    magic ("LLMJ")
+ * int    version
+ * int    tokenVectorDimension
+ * int    vocabSize (including the unknown token)
+ * int    maxContextLength
+ * int    bytes per weight: 8 (double) or 4 (float), following the model's {@link Precision}
+ * int    token count, then per token: int byte length + UTF-8 bytes (in id order)
+ *        zero padding up to an 8 byte boundary
+ * value  embeddings        [vocabSize][tokenVectorDimension]
+ * value  attentionWeights  [tokenVectorDimension][tokenVectorDimension]
+ * value  outputLayer       [tokenVectorDimension][vocabSize]
+ * </pre>
+ * 
+ * Version 1 files have no bytes-per-weight field and always hold doubles; they
+ * are still read. Reading maps the file read-only into an automatic arena and
+ * wraps each tensor around its slice of the mapping, so weights are paged in
+ * from the page cache as they are used instead of being copied onto the heap,
+ * and processes serving the same checkpoint share them. The mapping lives as
+ * long as the model's tensors; training a loaded model copies the output layer
+ * onto the heap on its first update. Writing goes to a temporary file that then
+ * replaces path, so a model can be saved over the checkpoint it is mapped from.
+ */
+public final class ModelCheckpoint {
+	
+	static final int MAGIC = 0x4A4D4C4C; // "LLMJ" read little-endian
+	static final int VERSION = 2;
+	
+	private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	
+	private ModelCheckpoint() {
+	}
+	
+	public static void write(TransformerModel model, Path path) throws IOException {
+		SimpleTokenizer tokenizer = model.getTokenizer();
+		int vocabSize = tokenizer.getVocabSize();
+		int tokenCount = vocabSize - 1;
+		
+		List<byte[]> tokens = new ArrayList<>(tokenCount);
+		int headerBytes = 7 * Integer.BYTES;
+		for (int id = 0; id < tokenCount; id++) {
+			byte[] bytes = tokenizer.getToken(id).getBytes(StandardCharsets.UTF_8);
+			tokens.add(bytes);
+			headerBytes += Integer.BYTES + bytes.length;
+		}
+		headerBytes = align(headerBytes);
+		
+		ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(model.getTokenVectorDimension()).putInt(vocabSize)
+				.putInt(model.getMaxContextLength()).putInt(model.getPrecision().bytes()).putInt(tokenCount);
+		for (byte[] bytes : tokens) {
+			header.putInt(bytes.length).put(bytes);
+		}
+		header.position(headerBytes).flip();
+		
+		// truncating a file that is still mapped would fault every later read of the mapping
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, header);
+			if (model.getPrecision() == Precision.FLOAT32) {
+				writeTensor(channel, model.getEmbeddings().getFloatEmbeddingMatrix());
+				writeTensor(channel, model.getFloatAttentionWeights());
+				writeTensor(channel, model.getFloatOutputLayer());
+			} else {
+				writeTensor(channel, model.getEmbeddings().getEmbeddingMatrix());
+				writeTensor(channel, model.getAttentionWeights());
+				writeTensor(channel, model.getOutputLayer());
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	public static TransformerModel read(Path path) throws IOException {
+		// the mapping outlives the channel and is unmapped once no tensor refers to it
+		MemorySegment file;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+		}
+		if (file.byteSize() < 6 * Integer.BYTES || file.get(INT, 0) != MAGIC) {
+			throw new IOException("Not a model checkpoint: " + path);
+		}
+		int version = file.get(INT, 4);
+		if (version != 1 && version != VERSION) {
+			throw new IOException("Unsupported checkpoint version " + version + " in " + path);
+		}
+		int dimension = file.get(INT, 8);
+		int vocabSize = file.get(INT, 12);
+		int maxContextLength = file.get(INT, 16);
+		// every tensor's element count has to fit in an int
+		if (dimension <= 0 || vocabSize <= 0 || maxContextLength <= 0
+				|| (long) dimension * Math.max(dimension, vocabSize) > Integer.MAX_VALUE) {
+			throw new IOException("Corrupt checkpoint " + path + ": dimension " + dimension + ", vocabulary size "
+					+ vocabSize + ", max context length " + maxContextLength);
+		}
+		long offset = 20;
+		int valueBytes = Double.BYTES;
+		if (version > 1) {
+			valueBytes = headerInt(file, offset, path);
+			offset += Integer.BYTES;
+			if (valueBytes != Double.BYTES && valueBytes != Float.BYTES) {
+				throw new IOException("Unsupported weight size " + valueBytes + " in " + path);
+			}
+		}
+		int tokenCount = headerInt(file, offset, path);
+		offset += Integer.BYTES;
+		// the unknown token is not stored, and every stored one takes at least its length field
+		if (tokenCount != vocabSize - 1 || tokenCount > (file.byteSize() - offset) / Integer.BYTES) {
+			throw new IOException("Corrupt checkpoint " + path + ": " + tokenCount + " tokens for vocabulary size "
+					+ vocabSize);
+		}
+
+		List<String> tokens = new ArrayList<>(tokenCount);
+		for (int id = 0; id < tokenCount; id++) {
+			int length = headerInt(file, offset, path);
+			if (length < 0 || length > file.byteSize() - offset - Integer.BYTES) {
+				throw new IOException("Corrupt checkpoint " + path + ": token " + id + " has length " + length);
+			}
+			byte[] bytes = new byte[length];
+			MemorySegment.copy(file, ValueLayout.JAVA_BYTE, offset + Integer.BYTES, bytes, 0, length);
+			tokens.add(new String(bytes, StandardCharsets.UTF_8));
+			offset += Integer.BYTES + length;
+		}
+		offset = align(offset);
+		
+		long expected = offset + (long) valueBytes * (2L * vocabSize * dimension + (long) dimension * dimension);
+		if (file.byteSize() != expected) {
+			throw new IOException("Truncated or corrupt checkpoint " + path + ": " + file.byteSize()
+					+ " bytes, expected " + expected);
+		}
+		SimpleTokenizer tokenizer = new SimpleTokenizer(tokens);
+		long embeddingBytes = (long) valueBytes * vocabSize * dimension;
+		long attentionBytes = (long) valueBytes * dimension * dimension;
+		MemorySegment embeddings = file.asSlice(offset, embeddingBytes);
+		MemorySegment attention = file.asSlice(offset + embeddingBytes, attentionBytes);
+		MemorySegment output = file.asSlice(offset + embeddingBytes + attentionBytes, embeddingBytes);
+		if (valueBytes == Float.BYTES) {
+			return new TransformerModel(tokenizer, maxContextLength,
+					FloatTensor.wrap(embeddings, vocabSize, dimension), FloatTensor.wrap(attention, dimension, dimension),
+					FloatTensor.wrap(output, dimension, vocabSize));
+		}
+		return new TransformerModel(tokenizer, maxContextLength,
+				DoubleTensor.wrap(embeddings, vocabSize, dimension), DoubleTensor.wrap(attention, dimension, dimension),
+				DoubleTensor.wrap(output, dimension, vocabSize));
+	}
+	
+	// an int of the header, or IOException if the file ends before it
+	private static int headerInt(MemorySegment file, long offset, Path path) throws IOException {
+		if (offset + Integer.BYTES > file.byteSize()) {
+			throw new IOException("Truncated checkpoint header in " + path);
+		}
+		return file.get(INT, offset);
+	}
+	
+	// tensors are written a row at a time so the direct buffer stays small
+	private static void writeTensor(FileChannel channel, DoubleTensor tensor) throws IOException {
+		DoubleTensor contiguous = tensor.contiguous();
+		if (!contiguous.hasArray()) {
+			// already little-endian, as in the file
+			writeFully(channel, contiguous.segment()
+					.asSlice((long) contiguous.offset() * Double.BYTES, (long) contiguous.elementCount() * Double.BYTES).asByteBuffer());
+			return;
+		}
+		int cols = contiguous.size(1);
+		ByteBuffer row = ByteBuffer.allocateDirect(cols * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		for (int r = 0, start = contiguous.offset(); r < contiguous.size(0); r++, start += cols) {
+			row.clear();
+			row.asDoubleBuffer().put(contiguous.data(), start, cols);
+			writeFully(channel, row);
+		}
+	}
+	
+	private static void writeTensor(FileChannel channel, FloatTensor tensor) throws IOException {
+		FloatTensor contiguous = tensor.contiguous();
+		if (!contiguous.hasArray()) {
+			// already little-endian, as in the file
+			writeFully(channel, contiguous.segment()
+					.asSlice((long) contiguous.offset() * Float.BYTES, (long) contiguous.elementCount() * Float.BYTES).asByteBuffer());
+			return;
+		}
+		int cols = contiguous.size(1);
+		ByteBuffer row = ByteBuffer.allocateDirect(cols * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		for (int r = 0, start = contiguous.offset(); r < contiguous.size(0); r++, start += cols) {
+			row.clear();
+			row.asFloatBuffer().put(contiguous.data(), start, cols);
+			writeFully(channel, row);
+		}
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	private static int align(int bytes) {
+		return (bytes + 7) & ~7;
+	}
+	
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+}
@@ -0,0 +1,181 @@
+package com.llm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cheap draft model for speculative decoding: for every context of up to
+ * {@code order - 1} tokens seen in the training data it remembers the most
+ * frequent next token. Proposals back off to shorter contexts and stop at the
+ * first context never seen, so drafts are only made where the corpus is
+ * predictable. Lookups go through an open-addressing table of packed context
+ * keys; an instance is immutable and can be shared between threads.
+ */
+public class NGramDraftModel {
+
+	public static final int MAX_ORDER = 4;
+
+	// each context token takes 20 bits of the key, above them the context length
+	private static final int TOKEN_BITS = 20;
+
+	private final int order;
+	private final long[] keys;
+	private final int[] nextTokens;
+	private final int contexts;
+
+	private NGramDraftModel(int order, Map<Long, Counts> counts) {
+		this.order = order;
+		this.contexts = counts.size();
+		int capacity = Integer.highestOneBit(Math.max(2, contexts * 2 - 1)) << 1;
+		this.keys = new long[capacity];
+		this.nextTokens = new int[capacity];
+		for (Map.Entry<Long, Counts> entry : counts.entrySet()) {
+			long key = entry.getKey();
+			int slot = slot(key);
+			while (keys[slot] != 0) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			keys[slot] = key;
+			nextTokens[slot] = entry.getValue().best();
+		}
+	}
+
+	/**
+	 * Counts n-grams up to the given order over every sequence of a shard.
+	 */
+	public static NGramDraftModel build(TokenShard shard, int order) {
+		checkOrder(order);
+		Map<Long, Counts> counts = new HashMap<>();
+		int[] tokenIds = new int[256];
+		for (int sequence = 0; sequence < shard.getSequenceCount(); sequence++) {
+			int length = shard.getSequenceLength(sequence);
+			if (length > tokenIds.length) {
+				tokenIds = new int[Math.max(length, tokenIds.length * 2)];
+			}
+			shard.copySequence(sequence, tokenIds, 0);
+			count(tokenIds, length, order, counts);
+		}
+		return new NGramDraftModel(order, counts);
+	}
+
+	public static NGramDraftModel build(List<int[]> sequences, int order) {
+		checkOrder(order);
+		Map<Long, Counts> counts = new HashMap<>();
+		for (int[] tokenIds : sequences) {
+			count(tokenIds, tokenIds.length, order, counts);
+		}
+		return new NGramDraftModel(order, counts);
+	}
+
+	private static void checkOrder(int order) {
+		if (order < 2 || order > MAX_ORDER) {
+			throw new IllegalArgumentException("N-gram order must be between 2 and " + MAX_ORDER + ", was " + order);
+		}
+	}
+
+	private static void count(int[] tokenIds, int length, int order, Map<Long, Counts> counts) {
+		for (int end = 1; end < length; end++) {
+			for (int context = 1; context < order && context <= end; context++) {
+				long key = key(tokenIds, end - context, end);
+				counts.computeIfAbsent(key, k -> new Counts()).add(tokenIds[end]);
+			}
+		}
+	}
+
+	private static long key(int[] tokenIds, int from, int to) {
+		long key = to - from;
+		for (int i = from; i < to; i++) {
+			if (tokenIds[i] >>> TOKEN_BITS != 0) {
+				throw new IllegalArgumentException("Token id " + tokenIds[i] + " does not fit an n-gram key");
+			}
+			key = key << TOKEN_BITS | tokenIds[i];
+		}
+		return key;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(keys.length)));
+	}
+
+	// most frequent follower of tokenIds[from, to), or -1 if that context never occurred
+	private int lookup(int[] tokenIds, int from, int to) {
+		long key = key(tokenIds, from, to);
+		int mask = keys.length - 1;
+		for (int slot = slot(key); keys[slot] != 0; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				return nextTokens[slot];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes up to max draft tokens continuing the generation to {@code out} and
+	 * returns how many were proposed.
+	 */
+	public int propose(Generation generation, int max, int[] out) {
+		int length = generation.getPromptLength() + generation.getGeneratedCount();
+		int history = Math.min(order - 1, length);
+		int[] context = new int[history + max];
+		for (int i = 0; i < history; i++) {
+			context[i] = generation.tokenAt(length - history + i);
+		}
+		int count = 0;
+		while (count < max) {
+			int end = history + count;
+			int next = -1;
+			for (int size = Math.min(order - 1, end); size > 0 && next < 0; size--) {
+				next = lookup(context, end - size, end);
+			}
+			if (next < 0) {
+				break;
+			}
+			context[end] = next;
+			out[count++] = next;
+		}
+		return count;
+	}
+
+	public int getOrder() {
+		return order;
+	}
+
+	public int getContextCount() {
+		return contexts;
+	}
+
+	/** Next-token counts of one context, kept as parallel arrays. */
+	private static final class Counts {
+		int[] tokens = new int[2];
+		int[] counts = new int[2];
+		int size;
+
+		void add(int tokenId) {
+			for (int i = 0; i < size; i++) {
+				if (tokens[i] == tokenId) {
+					counts[i]++;
+					return;
+				}
+			}
+			if (size == tokens.length) {
+				tokens = Arrays.copyOf(tokens, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+			tokens[size] = tokenId;
+			counts[size++] = 1;
+		}
+
+		// ties go to the token seen first
+		int best() {
+			int best = 0;
+			for (int i = 1; i < size; i++) {
+				if (counts[i] > counts[best]) {
+					best = i;
+				}
+			}
+			return tokens[best];
+		}
+	}
+}
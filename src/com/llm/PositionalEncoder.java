@@ -1,20 +1,119 @@
 package com.llm;
 
-public class PositionalEncoder {
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+
+import com.compute.Kernels;
+
+/**
+ * Sinusoidal positional encodings. An instance holds every position up to
+ * {@code maxContextLength} in one flat, row-major table that is built on first
+ * use and never modified afterwards, so lookups cost nothing during training
+ * and generation.
+ */
+public class PositionalEncoder implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	public static final int DEFAULT_MAX_CONTEXT_LENGTH = Integer.getInteger("llm.maxContextLength", 1024);
+	
+	private final int tokenVectorDimension;
+	private final int maxContextLength;
+	private transient volatile double[] table;
+	
+	public PositionalEncoder(int tokenVectorDimension, int maxContextLength) {
+		if (tokenVectorDimension <= 0 || maxContextLength <= 0) {
+			throw new IllegalArgumentException("Dimension and max context length must be positive");
+		}
+		this.tokenVectorDimension = tokenVectorDimension;
+		this.maxContextLength = maxContextLength;
+	}
+	
 	public static double[] getPositionalEncoding(int pos, int tokenVectorDimension) {//tokenVectorDimension is also called embedding dimension
         double[] encoding = new double[tokenVectorDimension];
-        
+        fill(encoding, 0, pos, tokenVectorDimension);
+        return encoding;
+    }
+	
+	private static void fill(double[] encoding, int offset, int pos, int tokenVectorDimension) {
         for (int i = 0; i < tokenVectorDimension; i++) {
             double denominator = Math.pow(10000, 2.0 * (i / 2) / tokenVectorDimension);
             double angle = pos / denominator;
             
             if (i % 2 == 0) {
-                encoding[i] = Math.sin(angle);
+                encoding[offset + i] = Math.sin(angle);
             } else {
                 // Odd index: use cosine
-                encoding[i] = Math.cos(angle);
+                encoding[offset + i] = Math.cos(angle);
             }
         }
-        return encoding;
-    }
+	}
+	
+	private double[] table() {
+		double[] t = table;
+		if (t == null) {
+			synchronized (this) {
+				t = table;
+				if (t == null) {
+					t = new double[maxContextLength * tokenVectorDimension];
+					for (int pos = 0; pos < maxContextLength; pos++) {
+						fill(t, offset(pos), pos, tokenVectorDimension);
+					}
+					table = t;
+				}
+			}
+		}
+		return t;
+	}
+	
+	/**
+	 * Index of the first element of position {@code pos} in the flat table.
+	 */
+	public int offset(int pos) {
+		if (pos < 0 || pos >= maxContextLength) {
+			throw new IllegalArgumentException("Position " + pos + " outside max context length " + maxContextLength);
+		}
+		return pos * tokenVectorDimension;
+	}
+	
+	/**
+	 * Read-only view of the encoding for one position.
+	 */
+	public DoubleBuffer view(int pos) {
+		return DoubleBuffer.wrap(table(), offset(pos), tokenVectorDimension).slice().asReadOnlyBuffer();
+	}
+	
+	/**
+	 * output = embedding + encoding(pos). output may be the embedding array.
+	 */
+	public void addTo(double[] embedding, int pos, double[] output) {
+		Kernels.add(embedding, 0, table(), offset(pos), output, 0, tokenVectorDimension);
+	}
+
+	/**
+	 * Adds encoding(pos) in place to values[start, start + dimension), e.g.
+	 * one row of a contiguous tensor.
+	 */
+	public void addTo(double[] values, int start, int pos) {
+		Kernels.add(values, start, table(), offset(pos), values, start, tokenVectorDimension);
+	}
+
+	/**
+	 * Float version of {@link #addTo(double[], int, int)}; each sum is rounded
+	 * to float once.
+	 */
+	public void addTo(float[] values, int start, int pos) {
+		double[] t = table();
+		int base = offset(pos);
+		for (int i = 0; i < tokenVectorDimension; i++) {
+			values[start + i] = (float) (values[start + i] + t[base + i]);
+		}
+	}
+	
+	public int getMaxContextLength() {
+		return maxContextLength;
+	}
+	
+	public int getTokenVectorDimension() {
+		return tokenVectorDimension;
+	}
 }
@@ -0,0 +1,35 @@
+package com.llm;
+
+import java.util.Locale;
+
+/**
+ * Storage type of a {@link TransformerModel}'s weights and input activations.
+ * FLOAT32 halves their memory and the bandwidth of every pass over them;
+ * products are still summed in double and the cached hidden states, logits and
+ * gradients stay double.
+ */
+public enum Precision {
+	FLOAT64(Double.BYTES), FLOAT32(Float.BYTES);
+
+	/** From {@code -Dllm.precision=float32|float64}, FLOAT64 when unset. */
+	public static final Precision DEFAULT = parse(System.getProperty("llm.precision", "float64"));
+
+	private final int bytes;
+
+	Precision(int bytes) {
+		this.bytes = bytes;
+	}
+
+	public static Precision parse(String name) {
+		try {
+			return valueOf(name.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown precision " + name + ", expected float32 or float64");
+		}
+	}
+
+	/** Bytes per stored value. */
+	public int bytes() {
+		return bytes;
+	}
+}
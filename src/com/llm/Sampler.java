@@ -0,0 +1,223 @@
+package com.llm;
+
+import java.util.Random;
+
+import com.compute.Kernels;
+
+/**
+ * Picks the next token from a row of logits. Supports greedy decoding,
+ * temperature sampling over the whole vocabulary, top-k and top-p (nucleus)
+ * sampling.
+ *
+ * Top-k and top-p keep the best candidates in a bounded min-heap, so a step is
+ * one comparison per vocab entry plus work on the k candidates; only the
+ * candidates are exponentiated. With both set, the nucleus is taken from the
+ * renormalized top k. Top-p alone starts from the {@value #NUCLEUS_CANDIDATES}
+ * highest logits and measures them against the whole vocabulary's
+ * probability mass, one exp-sum that stores nothing, and only takes more
+ * candidates when a flat distribution needs them to reach p. All buffers are
+ * kept between calls, so an instance is meant to be reused for every step of
+ * one generation and is not thread-safe.
+ */
+public class Sampler {
+
+	static final int NUCLEUS_CANDIDATES = 256;
+
+	private final double temperature;
+	private final int topK;
+	private final double topP;
+
+	private double[] probs = new double[0];
+	private int[] heapIds = new int[0];
+	private double[] heapLogits = new double[0];
+
+	/**
+	 * @param temperature 0 for greedy decoding
+	 * @param topK        0 to disable
+	 * @param topP        1 to disable
+	 */
+	public Sampler(double temperature, int topK, double topP) {
+		if (temperature < 0 || topK < 0 || topP <= 0 || topP > 1) {
+			throw new IllegalArgumentException("Invalid sampling parameters: temperature " + temperature + ", top-k "
+					+ topK + ", top-p " + topP);
+		}
+		this.temperature = temperature;
+		this.topK = topK;
+		this.topP = topP;
+	}
+
+	public static Sampler greedy() {
+		return new Sampler(0, 0, 1);
+	}
+
+	public static Sampler temperature(double temperature) {
+		return new Sampler(temperature, 0, 1);
+	}
+
+	public static Sampler topK(int k, double temperature) {
+		return new Sampler(temperature, k, 1);
+	}
+
+	public static Sampler topP(double p, double temperature) {
+		return new Sampler(temperature, 0, p);
+	}
+
+	/**
+	 * A fresh sampler with the same settings and its own buffers.
+	 */
+	public Sampler copy() {
+		return new Sampler(temperature, topK, topP);
+	}
+
+	public int sample(double[] logits, Random random) {
+		if (temperature == 0 || topK == 1) {
+			return argmax(logits);
+		}
+		if (topK == 0 && topP == 1) {
+			return sampleFullVocabulary(logits, random);
+		}
+		if (topK > 0) {
+			int size = selectTop(logits, Math.min(logits.length, topK));
+			double sum = weighCandidates(size);
+			return sampleCandidates(size, topP * sum, random);
+		}
+		return sampleNucleus(logits, random);
+	}
+
+	private int sampleNucleus(double[] logits, Random random) {
+		int size = selectTop(logits, Math.min(logits.length, NUCLEUS_CANDIDATES));
+		double max = heapMax(size);
+		double total = Kernels.expSum(logits, max, 1.0 / temperature);
+		double sum = weighCandidates(size);
+		while (sum < topP * total && size < logits.length) {
+			size = selectTop(logits, (int) Math.min(logits.length, size * 4L));
+			sum = weighCandidates(size);
+		}
+		return sampleCandidates(size, topP * total, random);
+	}
+
+	private static int argmax(double[] logits) {
+		int best = 0;
+		for (int i = 1; i < logits.length; i++) {
+			if (logits[i] > logits[best]) {
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	private int sampleFullVocabulary(double[] logits, Random random) {
+		if (probs.length != logits.length) {
+			probs = new double[logits.length];
+		}
+		double sum = Kernels.expSum(logits, Kernels.max(logits), 1.0 / temperature, probs);
+		double r = random.nextDouble() * sum;
+		double cumulative = 0;
+		for (int i = 0; i < probs.length; i++) {
+			cumulative += probs[i];
+			if (r <= cumulative) return i;
+		}
+		return probs.length - 1;
+	}
+
+	/**
+	 * Leaves the k largest logits in the heap arrays (a min-heap by logit) and
+	 * returns how many there are.
+	 */
+	private int selectTop(double[] logits, int k) {
+		if (heapIds.length < k) {
+			heapIds = new int[k];
+			heapLogits = new double[k];
+		}
+		int size = 0;
+		for (int id = 0; id < logits.length; id++) {
+			double logit = logits[id];
+			if (size < k) {
+				int i = size++;
+				while (i > 0) {
+					int parent = (i - 1) >>> 1;
+					if (heapLogits[parent] <= logit) break;
+					heapIds[i] = heapIds[parent];
+					heapLogits[i] = heapLogits[parent];
+					i = parent;
+				}
+				heapIds[i] = id;
+				heapLogits[i] = logit;
+			} else if (logit > heapLogits[0]) {
+				siftDown(0, size, id, logit);
+			}
+		}
+		return size;
+	}
+
+	private void siftDown(int i, int size, int id, double logit) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) break;
+			if (child + 1 < size && heapLogits[child + 1] < heapLogits[child]) {
+				child++;
+			}
+			if (heapLogits[child] >= logit) break;
+			heapIds[i] = heapIds[child];
+			heapLogits[i] = heapLogits[child];
+			i = child;
+		}
+		heapIds[i] = id;
+		heapLogits[i] = logit;
+	}
+
+	// largest candidate logit, which in a min-heap is one of the leaves
+	private double heapMax(int size) {
+		double max = heapLogits[0];
+		for (int i = size / 2; i < size; i++) {
+			max = Math.max(max, heapLogits[i]);
+		}
+		return max;
+	}
+
+	/**
+	 * Sorts the candidates by descending logit and replaces each logit with its
+	 * unnormalized probability exp((logit - max) / temperature), returning
+	 * their sum.
+	 */
+	private double weighCandidates(int size) {
+		// heap sort in place: repeatedly move the minimum to the end, leaving the candidates in descending order
+		for (int end = size - 1; end > 0; end--) {
+			int id = heapIds[end];
+			double logit = heapLogits[end];
+			heapIds[end] = heapIds[0];
+			heapLogits[end] = heapLogits[0];
+			siftDown(0, end, id, logit);
+		}
+		double max = heapLogits[0];
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			heapLogits[i] = Math.exp((heapLogits[i] - max) / temperature);
+			sum += heapLogits[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Samples from the smallest prefix of the weighed candidates whose weight
+	 * reaches threshold, or from all of them if none does.
+	 */
+	private int sampleCandidates(int size, double threshold, Random random) {
+		int keep = size;
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += heapLogits[i];
+			if (sum >= threshold) {
+				keep = i + 1;
+				break;
+			}
+		}
+		double r = random.nextDouble() * sum;
+		double cumulative = 0;
+		for (int i = 0; i < keep; i++) {
+			cumulative += heapLogits[i];
+			if (r <= cumulative) return heapIds[i];
+		}
+		return heapIds[keep - 1];
+	}
+}
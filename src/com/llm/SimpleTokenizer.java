@@ -1,78 +1,245 @@
 package com.llm;
 
 import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 
+/**
+ * Lowercased word tokenizer: punctuation characters are tokens of their own and
+ * everything else is split on whitespace.
+ *
+ * Encoding is a single pass over the text that hashes each token in place and
+ * looks it up in an open-addressing table, writing ids straight into an int
+ * array or IntBuffer without creating a String per token. Decoding indexes a
+ * plain String[]. Characters are lowercased one at a time, which matches
+ * String.toLowerCase for everything except a few context-dependent letters.
+ */
 public class SimpleTokenizer implements Serializable {
 	private static final long serialVersionUID = 1L;
-	
-	private final Map<String, Integer> vocab;
-    private final Map<Integer, String> reverseVocab;
-    private final Set<Character> punctuationChars = Set.of('.', ',', '!', '?', ';', ':', '(', ')', '[', ']', '{', '}', '"', '\'');
-    int unkTokenId;
-    int nVocab;
-    
+
+	private static final String PUNCTUATION_CHARS = ".,!?;:()[]{}\"'";
+	private static final String UNKNOWN_TOKEN = "<unk>";
+
+	private final String[] reverseVocab;
+	// open addressing, linear probing: token id + 1 per slot, 0 when empty
+	private final int[] slots;
+	private final int[] slotHashes;
+	int unkTokenId;
+	int nVocab;
+
+	private static final ThreadLocal<int[]> SCRATCH = ThreadLocal.withInitial(() -> new int[64]);
+
 	public SimpleTokenizer(String rawText) {
-		List<String> tokens = tokenize(rawText);
-		
-		Set<String> uniqueTokens = new LinkedHashSet<>(tokens);// Preserve insertion order
-        this.vocab = new HashMap<>();
-        this.reverseVocab = new HashMap<>();
-        
-        int id = 0;
-        for (String token : uniqueTokens) {
-            this.vocab.put(token, id);
-            this.reverseVocab.put(id, token);
-            id++;
-        }
-        
-        // Special tokens
-        this.unkTokenId = id;
-        this.nVocab = id + 1;
-	}
-	
-	private List<String> tokenize(String text) {
-        String processed = text.toLowerCase();;
-        
-        // Add spaces around punctuation
-        StringBuilder sb = new StringBuilder();
-        for (char c : processed.toCharArray()) {
-            if (punctuationChars.contains(c)) {
-                sb.append(' ').append(c).append(' ');
-            } else {
-                sb.append(c);
-            }
-        }
-        
-        // Split on whitespace and filter out empty strings
-        return Arrays.stream(sb.toString().split("\\s+"))
-                     .filter(s -> !s.isEmpty())
-                     .collect(Collectors.toList());
-    }
-	
+		this(uniqueTokens(rawText));
+	}
+
+	/**
+	 * Rebuilds a tokenizer from its tokens in id order, as stored in a checkpoint.
+	 */
+	SimpleTokenizer(Collection<String> uniqueTokens) {
+		this.reverseVocab = uniqueTokens.toArray(new String[0]);
+		int capacity = Integer.highestOneBit(Math.max(2, reverseVocab.length * 2 - 1)) << 1;
+		this.slots = new int[capacity];
+		this.slotHashes = new int[capacity];
+		for (int id = 0; id < reverseVocab.length; id++) {
+			String token = reverseVocab[id];
+			int hash = mix(token.hashCode());
+			int slot = hash & (capacity - 1);
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			slots[slot] = id + 1;
+			slotHashes[slot] = hash;
+		}
+
+		// Special tokens
+		this.unkTokenId = reverseVocab.length;
+		this.nVocab = reverseVocab.length + 1;
+	}
+
+	private static List<String> uniqueTokens(String rawText) {
+		// Preserve first-seen order; ids are assigned in that order
+		LinkedHashSet<String> tokens = new LinkedHashSet<>();
+		int length = rawText.length();
+		int pos = 0;
+		while (pos < length) {
+			int start = skipWhitespace(rawText, pos);
+			if (start == length) {
+				break;
+			}
+			int end = tokenEnd(rawText, start);
+			char[] chars = new char[end - start];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = Character.toLowerCase(rawText.charAt(start + i));
+			}
+			tokens.add(new String(chars));
+			pos = end;
+		}
+		return new ArrayList<>(tokens);
+	}
+
+	// same whitespace as the \s regex class
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static boolean isPunctuation(char c) {
+		return PUNCTUATION_CHARS.indexOf(c) >= 0;
+	}
+
+	private static int skipWhitespace(CharSequence text, int pos) {
+		while (pos < text.length() && isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+
+	// end of the token starting at start: one punctuation char, or a run up to whitespace/punctuation
+	private static int tokenEnd(CharSequence text, int start) {
+		if (isPunctuation(text.charAt(start))) {
+			return start + 1;
+		}
+		int end = start + 1;
+		while (end < text.length() && !isWhitespace(text.charAt(end)) && !isPunctuation(text.charAt(end))) {
+			end++;
+		}
+		return end;
+	}
+
+	private static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Id of text[start, end) compared case-insensitively, or the unknown id.
+	 */
+	private int lookup(CharSequence text, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + Character.toLowerCase(text.charAt(i));
+		}
+		int hash = mix(h);
+		int mask = slots.length - 1;
+		for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			if (slotHashes[slot] == hash && matches(reverseVocab[slots[slot] - 1], text, start, end)) {
+				return slots[slot] - 1;
+			}
+		}
+		return unkTokenId;
+	}
+
+	private static boolean matches(String token, CharSequence text, int start, int end) {
+		if (token.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < token.length(); i++) {
+			if (token.charAt(i) != Character.toLowerCase(text.charAt(start + i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the ids of every token in text to {@code out} and returns how many
+	 * were written.
+	 *
+	 * @throws BufferOverflowException if out has too little room
+	 */
+	public int encode(CharSequence text, IntBuffer out) {
+		int count = 0;
+		int length = text.length();
+		int pos = skipWhitespace(text, 0);
+		while (pos < length) {
+			int end = tokenEnd(text, pos);
+			out.put(lookup(text, pos, end));
+			count++;
+			pos = skipWhitespace(text, end);
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the ids of every token in text to {@code out} starting at
+	 * {@code offset} and returns how many were written.
+	 *
+	 * @throws BufferOverflowException if out has too little room
+	 */
+	public int encode(CharSequence text, int[] out, int offset) {
+		int count = 0;
+		int length = text.length();
+		int pos = skipWhitespace(text, 0);
+		while (pos < length) {
+			if (offset + count == out.length) {
+				throw new BufferOverflowException();
+			}
+			int end = tokenEnd(text, pos);
+			out[offset + count++] = lookup(text, pos, end);
+			pos = skipWhitespace(text, end);
+		}
+		return count;
+	}
+
+	public int[] encodeToArray(CharSequence text) {
+		int[] ids = SCRATCH.get();
+		while (true) {
+			try {
+				int count = encode(text, ids, 0);
+				return Arrays.copyOf(ids, count);
+			} catch (BufferOverflowException e) {
+				ids = new int[ids.length * 2];
+				SCRATCH.set(ids);
+			}
+		}
+	}
+
 	public List<Integer> encode(String text) {
-        return tokenize(text).stream()
-                .map(token -> vocab.getOrDefault(token, unkTokenId))
-                .collect(Collectors.toList());
-    }
-    
-    public List<String> decode(List<Integer> tokenIds) {
-        return tokenIds.stream()
-                .map(id -> reverseVocab.getOrDefault(id, "<unk>"))
-                .collect(Collectors.toList());
-    }
-    
-    public String decodeToString(List<Integer> tokenIds) {
-        return tokenIds.stream()
-                .map(id -> reverseVocab.getOrDefault(id, "<unk>"))
-                .collect(Collectors.joining(" "));
-    }
+		int[] ids = encodeToArray(text);
+		List<Integer> tokenIds = new ArrayList<>(ids.length);
+		for (int id : ids) {
+			tokenIds.add(id);
+		}
+		return tokenIds;
+	}
+
+	public String getToken(int tokenId) {
+		return tokenId >= 0 && tokenId < reverseVocab.length ? reverseVocab[tokenId] : UNKNOWN_TOKEN;
+	}
+
+	public List<String> decode(List<Integer> tokenIds) {
+		List<String> tokens = new ArrayList<>(tokenIds.size());
+		for (int id : tokenIds) {
+			tokens.add(getToken(id));
+		}
+		return tokens;
+	}
+
+	public String decodeToString(List<Integer> tokenIds) {
+		StringBuilder sb = new StringBuilder();
+		for (int id : tokenIds) {
+			if (sb.length() > 0) sb.append(' ');
+			sb.append(getToken(id));
+		}
+		return sb.toString();
+	}
+
+	public String decodeToString(int[] tokenIds, int offset, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = offset; i < offset + length; i++) {
+			if (i > offset) sb.append(' ');
+			sb.append(getToken(tokenIds[i]));
+		}
+		return sb.toString();
+	}
+
+	int getUnkTokenId() {
+		return unkTokenId;
+	}
 
 	public int getVocabSize() {
 		return this.nVocab;
@@ -0,0 +1,80 @@
+package com.llm;
+
+import java.util.Arrays;
+
+import com.compute.Kernels;
+
+/**
+ * Gradient of the output layer holding only the vocab columns that were
+ * touched. Every target token contributes to exactly one column, so a step
+ * costs time proportional to the tokens seen rather than to the vocabulary.
+ * Buffers are reusable: {@link #clear()} only resets the touched columns.
+ */
+class SparseGradient {
+	
+	private final int tokenVectorDimension;
+	private final int[] slotOfColumn;
+	private int[] columns;
+	private double[][] values;
+	private int size;
+	
+	SparseGradient(int tokenVectorDimension, int vocabSize) {
+		this.tokenVectorDimension = tokenVectorDimension;
+		this.slotOfColumn = new int[vocabSize];
+		Arrays.fill(slotOfColumn, -1);
+		this.columns = new int[16];
+		this.values = new double[16][];
+	}
+	
+	/**
+	 * The gradient for one vocab column, created (zeroed) on first touch.
+	 */
+	double[] column(int column) {
+		int slot = slotOfColumn[column];
+		if (slot >= 0) {
+			return values[slot];
+		}
+		if (size == columns.length) {
+			columns = Arrays.copyOf(columns, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		slot = size++;
+		slotOfColumn[column] = slot;
+		columns[slot] = column;
+		if (values[slot] == null) {
+			values[slot] = new double[tokenVectorDimension];
+		} else {
+			Arrays.fill(values[slot], 0.0);
+		}
+		return values[slot];
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	int columnAt(int slot) {
+		return columns[slot];
+	}
+	
+	double[] valuesAt(int slot) {
+		return values[slot];
+	}
+	
+	/**
+	 * this += other, column by column.
+	 */
+	void add(SparseGradient other) {
+		for (int slot = 0; slot < other.size; slot++) {
+			double[] into = column(other.columns[slot]);
+			Kernels.add(into, other.values[slot], into);
+		}
+	}
+	
+	void clear() {
+		for (int slot = 0; slot < size; slot++) {
+			slotOfColumn[columns[slot]] = -1;
+		}
+		size = 0;
+	}
+}
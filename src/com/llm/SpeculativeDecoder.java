@@ -0,0 +1,96 @@
+package com.llm;
+
+import java.util.List;
+
+/**
+ * Speculative decoding: an {@link NGramDraftModel} guesses up to
+ * {@code lookahead} tokens and the model checks all of them in one batched
+ * pass, so every accepted draft token saves a separate decode step. A draft
+ * token is kept when the model, sampling as usual, picks the same token;
+ * otherwise the model's own sample is kept and the rest of the draft dropped.
+ * Since the draft is deterministic this yields exactly the tokens the sampler
+ * would have produced on its own.
+ *
+ * Counters cover every generation run through this decoder and are not
+ * synchronized; use one decoder per thread.
+ */
+public class SpeculativeDecoder {
+
+	private final TransformerModel model;
+	private final NGramDraftModel draft;
+	private final int lookahead;
+	private final int[] proposal;
+
+	private long passes;
+	private long proposedTokens;
+	private long acceptedTokens;
+	private long generatedTokens;
+
+	public SpeculativeDecoder(TransformerModel model, NGramDraftModel draft, int lookahead) {
+		if (lookahead <= 0) {
+			throw new IllegalArgumentException("Lookahead must be positive");
+		}
+		this.model = model;
+		this.draft = draft;
+		this.lookahead = lookahead;
+		this.proposal = new int[lookahead];
+	}
+
+	/**
+	 * Decodes the generation until it finishes.
+	 */
+	public void run(Generation generation) {
+		while (!generation.isFinished()) {
+			int before = generation.getGeneratedCount();
+			int proposed = draft.propose(generation, lookahead, proposal);
+			acceptedTokens += model.speculativeStep(generation, proposal, proposed);
+			proposedTokens += proposed;
+			generatedTokens += generation.getGeneratedCount() - before;
+			passes++;
+		}
+	}
+
+	public int[] generate(int[] promptIds, int maxLength, Sampler sampler) {
+		Generation generation = model.startGeneration(promptIds, maxLength, sampler);
+		run(generation);
+		return generation.getTokenIds();
+	}
+
+	public String generate(String prompt, int maxLength, Sampler sampler, TokenListener listener) {
+		SimpleTokenizer tokenizer = model.getTokenizer();
+		Generation generation = model.startGeneration(tokenizer.encodeToArray(prompt), maxLength, sampler,
+				null, listener);
+		run(generation);
+		int[] tokenIds = generation.getTokenIds();
+		return tokenizer.decodeToString(tokenIds, 0, tokenIds.length);
+	}
+
+	/**
+	 * Fraction of proposed draft tokens the model accepted.
+	 */
+	public double getAcceptanceRate() {
+		return proposedTokens == 0 ? 0 : (double) acceptedTokens / proposedTokens;
+	}
+
+	/**
+	 * Tokens produced per verification pass; plain decoding makes one.
+	 */
+	public double getTokensPerPass() {
+		return passes == 0 ? 0 : (double) generatedTokens / passes;
+	}
+
+	public long getProposedTokens() {
+		return proposedTokens;
+	}
+
+	public long getAcceptedTokens() {
+		return acceptedTokens;
+	}
+
+	public void resetStats() {
+		passes = 0;
+		proposedTokens = 0;
+		acceptedTokens = 0;
+		generatedTokens = 0;
+	}
+}
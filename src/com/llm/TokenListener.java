@@ -0,0 +1,14 @@
+package com.llm;
+
+/**
+ * Receives generated tokens one at a time, as soon as they are sampled and can
+ * no longer turn out to be the start of a stop sequence.
+ */
+@FunctionalInterface
+public interface TokenListener {
+
+	/**
+	 * @return false to cancel the generation; no further tokens are sampled
+	 */
+	boolean onToken(int tokenId, String token);
+}
@@ -0,0 +1,323 @@
+package com.llm;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A corpus tokenized once into a compact binary file of int32 token ids plus a
+ * sequence-offset index, read back through a memory mapping so epochs never
+ * re-encode text and corpora larger than the heap still train. All values are
+ * little-endian:
+ *
+ * <pre>
+ * int  magic ("LLMT")
+ * int  version
+ * int  sequence count
+ * int  unused
+ * long token count
+ * int  tokens[token count]
+ *      zero padding up to an 8 byte boundary
+ * long offsets[sequence count + 1]   index of each sequence's first token
+ * </pre>
+ *
+ * The index comes last so {@link #build} can stream tokens to the file before
+ * it knows how many there are.
+ */
+public class TokenShard implements AutoCloseable {
+
+	static final int MAGIC = 0x544D4C4C; // "LLMT" read little-endian
+	static final int VERSION = 2;
+
+	// sentences of this many characters or fewer are skipped, as in LLM.main
+	static final int MIN_SENTENCE_CHARS = 20;
+
+	private static final int HEADER_BYTES = 24;
+	private static final long MAX_CHUNK_BYTES = 1L << 24;
+	private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	private final Arena arena;
+	private final MemorySegment file;
+	private final int sequenceCount;
+	private final long tokenCount;
+	private final long offsetsStart;
+
+	private TokenShard(Arena arena, MemorySegment file, int sequenceCount, long tokenCount) {
+		this.arena = arena;
+		this.file = file;
+		this.sequenceCount = sequenceCount;
+		this.tokenCount = tokenCount;
+		this.offsetsStart = offsetsStart(tokenCount);
+	}
+
+	/**
+	 * Maps an existing shard file. The mapping stays valid until {@link #close()}
+	 * and may be read from several threads.
+	 */
+	public static TokenShard open(Path shardFile) throws IOException {
+		Arena arena = Arena.ofShared();
+		try (FileChannel channel = FileChannel.open(shardFile, StandardOpenOption.READ)) {
+			MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+			if (file.byteSize() < HEADER_BYTES || file.get(INT, 0) != MAGIC) {
+				throw new IOException("Not a token shard: " + shardFile);
+			}
+			int version = file.get(INT, 4);
+			if (version != VERSION) {
+				throw new IOException("Unsupported token shard version " + version + " in " + shardFile);
+			}
+			int sequenceCount = file.get(INT, 8);
+			long tokenCount = file.get(LONG, 16);
+			long expected = offsetsStart(tokenCount) + (sequenceCount + 1L) * Long.BYTES;
+			if (file.byteSize() != expected) {
+				throw new IOException("Truncated or corrupt token shard " + shardFile + ": " + file.byteSize()
+						+ " bytes, expected " + expected);
+			}
+			return new TokenShard(arena, file, sequenceCount, tokenCount);
+		} catch (IOException | RuntimeException e) {
+			arena.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Tokenizes a UTF-8 corpus into a shard file and opens it. The corpus is
+	 * memory-mapped, cut into chunks on ". " sentence boundaries and the chunks
+	 * are encoded in parallel. Each chunk is written as soon as it and all
+	 * chunks before it are done, so sentence order is preserved and only the
+	 * chunks in flight plus the sequence lengths are held in memory. Sequences
+	 * longer than maxSequenceLength tokens are truncated.
+	 */
+	public static TokenShard build(Path corpus, SimpleTokenizer tokenizer, Path shardFile, int maxSequenceLength,
+			int threads) throws IOException {
+		try (FileChannel input = FileChannel.open(corpus, StandardOpenOption.READ);
+				Arena arena = Arena.ofShared();
+				FileChannel output = FileChannel.open(shardFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+				// closed first, which waits for running chunks before the corpus is unmapped
+				ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+			MemorySegment text = input.map(FileChannel.MapMode.READ_ONLY, 0, input.size(), arena);
+			long[] bounds = chunkBounds(text, (int) Math.max(threads * 4L, text.byteSize() / MAX_CHUNK_BYTES + 1));
+			int chunks = bounds.length - 1;
+			// enough to keep every thread busy while the oldest chunk is still being encoded
+			int window = threads * 2;
+			Deque<Future<Chunk>> pending = new ArrayDeque<>(window);
+			ShardWriter writer = new ShardWriter(output);
+			int next = 0;
+			while (next < chunks || !pending.isEmpty()) {
+				for (; next < chunks && pending.size() < window; next++) {
+					MemorySegment slice = text.asSlice(bounds[next], bounds[next + 1] - bounds[next]);
+					pending.add(executor.submit(() -> encodeChunk(slice, tokenizer, maxSequenceLength)));
+				}
+				writer.append(pending.remove().get());
+			}
+			writer.finish();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while tokenizing " + corpus, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to tokenize " + corpus, e.getCause());
+		}
+		return open(shardFile);
+	}
+
+	// chunk starts just after a ". " so no sentence (or UTF-8 sequence) is split
+	private static long[] chunkBounds(MemorySegment text, int chunks) {
+		long size = text.byteSize();
+		long[] bounds = new long[chunks + 1];
+		int count = 1;
+		for (int c = 1; c < chunks; c++) {
+			long pos = Math.max(bounds[count - 1], size * c / chunks);
+			while (pos + 1 < size && !(text.get(ValueLayout.JAVA_BYTE, pos) == '.'
+					&& text.get(ValueLayout.JAVA_BYTE, pos + 1) == ' ')) {
+				pos++;
+			}
+			if (pos + 1 >= size) {
+				break;
+			}
+			if (pos + 2 > bounds[count - 1]) {
+				bounds[count++] = pos + 2;
+			}
+		}
+		bounds[count++] = size;
+		return Arrays.copyOf(bounds, count);
+	}
+
+	private static Chunk encodeChunk(MemorySegment bytes, SimpleTokenizer tokenizer, int maxSequenceLength) {
+		CharBuffer text = StandardCharsets.UTF_8.decode(bytes.asByteBuffer());
+		Chunk chunk = new Chunk();
+		int[] ids = new int[256];
+		int start = 0;
+		int length = text.length();
+		while (start <= length) {
+			int end = start;
+			while (end < length && !(text.charAt(end) == '.' && end + 1 < length && text.charAt(end + 1) == ' ')) {
+				end++;
+			}
+			if (end - start > MIN_SENTENCE_CHARS) {
+				CharSequence sentence = text.subSequence(start, end);
+				int count;
+				while (true) {
+					try {
+						count = tokenizer.encode(sentence, ids, 0);
+						break;
+					} catch (BufferOverflowException e) {
+						ids = new int[ids.length * 2];
+					}
+				}
+				chunk.add(ids, Math.min(count, maxSequenceLength));
+			}
+			start = end + 2;
+		}
+		return chunk;
+	}
+
+	private static long offsetsStart(long tokenCount) {
+		return (HEADER_BYTES + tokenCount * Integer.BYTES + 7) & ~7L;
+	}
+
+	public int getSequenceCount() {
+		return sequenceCount;
+	}
+
+	public long getTokenCount() {
+		return tokenCount;
+	}
+
+	private long offset(int sequence) {
+		if (sequence < 0 || sequence >= sequenceCount) {
+			throw new IndexOutOfBoundsException("Sequence " + sequence + " of " + sequenceCount);
+		}
+		return file.get(LONG, offsetsStart + (long) sequence * Long.BYTES);
+	}
+
+	public int getSequenceLength(int sequence) {
+		return (int) (file.get(LONG, offsetsStart + (sequence + 1L) * Long.BYTES) - offset(sequence));
+	}
+
+	/**
+	 * Copies one sequence out of the mapping into {@code out} at {@code offset}
+	 * and returns its length.
+	 */
+	public int copySequence(int sequence, int[] out, int offset) {
+		int length = getSequenceLength(sequence);
+		MemorySegment.copy(file, INT, HEADER_BYTES + offset(sequence) * Integer.BYTES, out, offset, length);
+		return length;
+	}
+
+	public int[] getSequence(int sequence) {
+		int[] tokenIds = new int[getSequenceLength(sequence)];
+		copySequence(sequence, tokenIds, 0);
+		return tokenIds;
+	}
+
+	@Override
+	public void close() {
+		arena.close();
+	}
+
+	/** Token ids and sequence lengths encoded from one chunk of the corpus. */
+	private static final class Chunk {
+		int[] ids = new int[1024];
+		int[] lengths = new int[64];
+		int tokens;
+		int sequences;
+
+		void add(int[] source, int length) {
+			if (tokens + length > ids.length) {
+				ids = Arrays.copyOf(ids, Math.max(ids.length * 2, tokens + length));
+			}
+			System.arraycopy(source, 0, ids, tokens, length);
+			tokens += length;
+			if (sequences == lengths.length) {
+				lengths = Arrays.copyOf(lengths, sequences * 2);
+			}
+			lengths[sequences++] = length;
+		}
+	}
+
+	/**
+	 * Appends chunks to a shard file in order. Only the sequence lengths are
+	 * kept; the index and then the header are written by {@link #finish()}.
+	 */
+	private static final class ShardWriter {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		private int[] lengths = new int[1024];
+		private int sequences;
+		private long tokens;
+
+		ShardWriter(FileChannel channel) throws IOException {
+			this.channel = channel;
+			// left zero until finish(), so an unfinished file is never taken for a shard
+			channel.position(HEADER_BYTES);
+		}
+
+		void append(Chunk chunk) throws IOException {
+			for (int t = 0; t < chunk.tokens; t++) {
+				putInt(chunk.ids[t]);
+			}
+			if (sequences + chunk.sequences > lengths.length) {
+				lengths = Arrays.copyOf(lengths, Math.max(lengths.length * 2, sequences + chunk.sequences));
+			}
+			System.arraycopy(chunk.lengths, 0, lengths, sequences, chunk.sequences);
+			sequences += chunk.sequences;
+			tokens += chunk.tokens;
+		}
+
+		void finish() throws IOException {
+			if (tokens % 2 != 0) {
+				putInt(0);
+			}
+			long offset = 0;
+			putLong(offset);
+			for (int s = 0; s < sequences; s++) {
+				offset += lengths[s];
+				putLong(offset);
+			}
+			flush();
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(sequences).putInt(0).putLong(tokens).flip();
+			for (long position = 0; buffer.hasRemaining();) {
+				position += channel.write(buffer, position);
+			}
+		}
+
+		private void putInt(int value) throws IOException {
+			if (buffer.remaining() < Integer.BYTES) {
+				flush();
+			}
+			buffer.putInt(value);
+		}
+
+		private void putLong(long value) throws IOException {
+			if (buffer.remaining() < Long.BYTES) {
+				flush();
+			}
+			buffer.putLong(value);
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+}
@@ -1,179 +1,659 @@
 package com.llm;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.util.*;
 
-public class TransformerModel implements Serializable {
-    private static final long serialVersionUID = 1L;
+import com.compute.DoubleTensor;
+import com.compute.FloatTensor;
+import com.compute.Gemm;
+import com.compute.Kernels;
+import com.compute.QuantizedMatrix;
+import com.metrics.Phase;
+import com.metrics.PhaseEvent;
+import com.metrics.StepMetrics;
+
+/**
+ * Toy next-token model: (embedding + positional encoding) x attentionWeights
+ * gives each position's hidden state, and hidden state x outputLayer its
+ * logits. Weights and per-step activations are contiguous tensors in the
+ * {@link Precision} chosen at construction; with FLOAT32 the float weights and
+ * inputs are multiplied with double accumulation, and hidden states, logits
+ * and gradients stay double.
+ *
+ * Training and decode steps take their scratch buffers from a per-thread
+ * {@link Workspace}, so once warmed up a step allocates nothing.
+ */
+public class TransformerModel {
+    private static final double LEARNING_RATE = 0.01;
     
     private final SimpleTokenizer tokenizer;
     private final EmbeddingGenerator embeddings;
     private final int tokenVectorDimension;
+    private final PositionalEncoder positionalEncoder;
+    private final Precision precision;
     
-    // Model parameters (simplified for example)
-    private transient double[][] attentionWeights;
-    private transient double[][] outputLayer;
+    // Model parameters (simplified for example); only the pair matching precision is set
+    private DoubleTensor attentionWeights;
+    private DoubleTensor outputLayer;
+    private FloatTensor floatAttentionWeights;
+    private FloatTensor floatOutputLayer;
+    private QuantizedMatrix quantizedOutputLayer;
+    private final ThreadLocal<Workspace> workspaces = new ThreadLocal<>();
     
     public TransformerModel(SimpleTokenizer tokenizer, int tokenVectorDimension) {
+        this(tokenizer, tokenVectorDimension, PositionalEncoder.DEFAULT_MAX_CONTEXT_LENGTH);
+    }
+    
+    public TransformerModel(SimpleTokenizer tokenizer, int tokenVectorDimension, int maxContextLength) {
+        this(tokenizer, tokenVectorDimension, maxContextLength, Precision.DEFAULT);
+    }
+    
+    public TransformerModel(SimpleTokenizer tokenizer, int tokenVectorDimension, int maxContextLength,
+            Precision precision) {
         this.tokenizer = tokenizer;
         this.tokenVectorDimension = tokenVectorDimension;
-        this.embeddings = new EmbeddingGenerator(tokenizer.getVocabSize(), tokenVectorDimension);
+        this.precision = precision;
+        this.positionalEncoder = new PositionalEncoder(tokenVectorDimension, maxContextLength);
+        this.embeddings = new EmbeddingGenerator(tokenizer.getVocabSize(), tokenVectorDimension, precision);
         initializeModel();
     }
     
+    /**
+     * Rebuilds a trained model from checkpointed weights.
+     */
+    TransformerModel(SimpleTokenizer tokenizer, int maxContextLength, DoubleTensor embeddingMatrix,
+            DoubleTensor attentionWeights, DoubleTensor outputLayer) {
+        this.tokenizer = tokenizer;
+        this.tokenVectorDimension = attentionWeights.size(0);
+        this.precision = Precision.FLOAT64;
+        this.positionalEncoder = new PositionalEncoder(tokenVectorDimension, maxContextLength);
+        this.embeddings = new EmbeddingGenerator(embeddingMatrix);
+        this.attentionWeights = attentionWeights;
+        this.outputLayer = outputLayer;
+    }
+    
+    TransformerModel(SimpleTokenizer tokenizer, int maxContextLength, FloatTensor embeddingMatrix,
+            FloatTensor attentionWeights, FloatTensor outputLayer) {
+        this.tokenizer = tokenizer;
+        this.tokenVectorDimension = attentionWeights.size(0);
+        this.precision = Precision.FLOAT32;
+        this.positionalEncoder = new PositionalEncoder(tokenVectorDimension, maxContextLength);
+        this.embeddings = new EmbeddingGenerator(embeddingMatrix);
+        this.floatAttentionWeights = attentionWeights;
+        this.floatOutputLayer = outputLayer;
+    }
+    
     private void initializeModel() {
         Random rand = new Random(42);
+        int vocabSize = tokenizer.getVocabSize();
         
-        // Simplified attention weights (in real model, this would be more complex)
-        this.attentionWeights = new double[tokenVectorDimension][tokenVectorDimension];
-        for (int i = 0; i < tokenVectorDimension; i++) {
-            for (int j = 0; j < tokenVectorDimension; j++) {
-                attentionWeights[i][j] = rand.nextGaussian() * 0.02;
-            }
+        // Simplified attention weights (in real model, this would be more complex), then the output layer;
+        // both are drawn in row-major order straight into their tensors
+        if (precision == Precision.FLOAT32) {
+            this.floatAttentionWeights = randomFloats(rand, tokenVectorDimension, tokenVectorDimension);
+            this.floatOutputLayer = randomFloats(rand, tokenVectorDimension, vocabSize);
+        } else {
+            this.attentionWeights = randomDoubles(rand, tokenVectorDimension, tokenVectorDimension);
+            this.outputLayer = randomDoubles(rand, tokenVectorDimension, vocabSize);
         }
-        
-        // Output layer
-        this.outputLayer = new double[tokenVectorDimension][tokenizer.getVocabSize()];
-        for (int i = 0; i < tokenVectorDimension; i++) {
-            for (int j = 0; j < tokenizer.getVocabSize(); j++) {
-                outputLayer[i][j] = rand.nextGaussian() * 0.02;
-            }
+    }
+    
+    private static DoubleTensor randomDoubles(Random rand, int rows, int cols) {
+        DoubleTensor tensor = DoubleTensor.zeros(rows, cols);
+        double[] values = tensor.data();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rand.nextGaussian() * 0.02;
+        }
+        return tensor;
+    }
+    
+    private static FloatTensor randomFloats(Random rand, int rows, int cols) {
+        FloatTensor tensor = FloatTensor.zeros(rows, cols);
+        float[] values = tensor.data();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) (rand.nextGaussian() * 0.02);
         }
+        return tensor;
     }
     
     public void train(List<Integer> inputs, List<Integer> targets) {
+        train(inputs.stream().mapToInt(Integer::intValue).toArray(), targets.stream().mapToInt(Integer::intValue).toArray());
+    }
+    
+    public void train(int[] inputs, int[] targets) {
+        if (inputs.length != targets.length) {
+            throw new IllegalArgumentException("Inputs and targets must have the same length");
+        }
+        train(inputs, 0, targets, 0, inputs.length);
+    }
+    
+    /**
+     * Next-token training on tokenIds[offset, offset + length): every token but
+     * the last is an input and the token after it is its target.
+     */
+    public void trainSequence(int[] tokenIds, int offset, int length) {
+        if (length < 2) return;
+        train(tokenIds, offset, tokenIds, offset + 1, length - 1);
+    }
+    
+    private void train(int[] inputs, int inputOffset, int[] targets, int targetOffset, int length) {
+        checkNotQuantized();
+        Workspace workspace = borrowWorkspace();
+        try {
+            SparseGradient gradients = workspace.gradients();
+            accumulateGradients(workspace, inputs, inputOffset, targets, targetOffset, length, gradients);
+            applyGradients(gradients);
+        } finally {
+            workspace.release();
+        }
+    }
+    
+    SparseGradient newGradients() {
+        checkNotQuantized();
+        return new SparseGradient(tokenVectorDimension, tokenizer.getVocabSize());
+    }
+    
+    /**
+     * Forward pass plus gradient calculation for one sequence, added into
+     * {@code gradients}. Does not touch the weights, so several threads can run
+     * this at once as long as each has its own gradient buffer.
+     */
+    void accumulateGradients(int[] inputs, int inputOffset, int[] targets, int targetOffset, int length,
+            SparseGradient gradients) {
+        Workspace workspace = borrowWorkspace();
+        try {
+            accumulateGradients(workspace, inputs, inputOffset, targets, targetOffset, length, gradients);
+        } finally {
+            workspace.release();
+        }
+    }
+    
+    private void accumulateGradients(Workspace workspace, int[] inputs, int inputOffset, int[] targets,
+            int targetOffset, int length, SparseGradient gradients) {
+        long start = System.nanoTime();
+        long allocated = StepMetrics.allocatedBytes();
+        
         // 1. Forward pass
-        double[][] hiddenStates = processInput(inputs);
+        processInput(workspace, inputs, inputOffset, length);
         
-        // 2. Calculate gradients (simplified)
-        double[][] gradients = new double[outputLayer.length][outputLayer[0].length];
-        for (int i = 0; i < targets.size(); i++) {
-            int target = targets.get(i);
-            for (int j = 0; j < tokenVectorDimension; j++) {
-                gradients[j][target] += hiddenStates[i][j];
-            }
+        // 2. Calculate gradients (simplified): only the target columns are non-zero
+        PhaseEvent phase = PhaseEvent.start(Phase.GRADIENT);
+        double[] states = workspace.hidden.data();
+        for (int i = 0; i < length; i++) {
+            double[] column = gradients.column(targets[targetOffset + i]);
+            Kernels.add(column, 0, states, i * tokenVectorDimension, column, 0, tokenVectorDimension);
         }
-        
-        // 3. Update weights (simplified SGD)
-        double learningRate = 0.01;
-        for (int i = 0; i < outputLayer.length; i++) {
-            for (int j = 0; j < outputLayer[i].length; j++) {
-                outputLayer[i][j] -= learningRate * gradients[i][j];
+        phase.finish(length);
+        StepMetrics.TRAIN.record(length, start, allocated);
+    }
+    
+    void applyGradients(SparseGradient gradients) {
+        // 3. Update weights (simplified SGD), writing only the touched columns
+        PhaseEvent phase = PhaseEvent.start(Phase.WEIGHT_UPDATE);
+        // a checkpoint's layer is read from its mapping until the first update copies it onto the heap
+        if (floatOutputLayer != null && !floatOutputLayer.hasArray()) {
+            floatOutputLayer = floatOutputLayer.copy();
+        } else if (outputLayer != null && !outputLayer.hasArray()) {
+            outputLayer = outputLayer.copy();
+        }
+        for (int slot = 0; slot < gradients.size(); slot++) {
+            int target = gradients.columnAt(slot);
+            double[] column = gradients.valuesAt(slot);
+            // column target of the dim x vocab layer, one row stride apart
+            if (floatOutputLayer != null) {
+                float[] weights = floatOutputLayer.data();
+                int stride = floatOutputLayer.stride(0);
+                for (int j = 0, index = target; j < tokenVectorDimension; j++, index += stride) {
+                    weights[index] -= (float) (LEARNING_RATE * column[j]);
+                }
+            } else {
+                double[] weights = outputLayer.data();
+                int stride = outputLayer.stride(0);
+                for (int j = 0, index = target; j < tokenVectorDimension; j++, index += stride) {
+                    weights[index] -= LEARNING_RATE * column[j];
+                }
             }
         }
+        phase.finish(gradients.size());
     }
     
-    private double[][] processInput(List<Integer> tokenIds) {
-        double[][] hiddenStates = new double[tokenIds.size()][tokenVectorDimension];
+    /**
+     * Projects tokenIds[offset, offset + length) at positions 0.. into the
+     * first length rows of workspace.hidden.
+     */
+    private void processInput(Workspace workspace, int[] tokenIds, int offset, int length) {
+        workspace.ensureRows(length);
         
-        for (int pos = 0; pos < tokenIds.size(); pos++) {
-            int tokenId = tokenIds.get(pos);
-            double[] tokenEmbedding = embeddings.getEmbedding(tokenId);
-            double[] positionalEncoding = PositionalEncoder.getPositionalEncoding(pos, tokenVectorDimension);
-            
-            // Combine embedding + positional encoding
-            for (int i = 0; i < tokenVectorDimension; i++) {
-                hiddenStates[pos][i] = tokenEmbedding[i] + positionalEncoding[i];
-            }
+        PhaseEvent phase = PhaseEvent.start(Phase.EMBEDDING);
+        for (int pos = 0; pos < length; pos++) {
+            embed(workspace, pos, tokenIds[offset + pos]);
+        }
+        phase.finish(length);
+        
+        // Combine embedding + positional encoding
+        phase = PhaseEvent.start(Phase.POSITIONAL_ENCODING);
+        for (int pos = 0; pos < length; pos++) {
+            addPosition(workspace, pos, pos);
         }
+        phase.finish(length);
         
         // Simplified attention (real implementation would use proper attention)
-        return applyAttention(hiddenStates);
+        phase = PhaseEvent.start(Phase.ATTENTION);
+        Arrays.fill(workspace.hidden.data(), 0, length * tokenVectorDimension, 0.0);
+        applyAttention(workspace, workspace.hidden, length);
+        phase.finish(length);
     }
     
-    private double[][] applyAttention(double[][] hiddenStates) {
-        // Simplified attention operation
-        double[][] output = new double[hiddenStates.length][tokenVectorDimension];
-        for (int i = 0; i < hiddenStates.length; i++) {
-            for (int j = 0; j < tokenVectorDimension; j++) {
-                for (int k = 0; k < tokenVectorDimension; k++) {
-                    output[i][j] += hiddenStates[i][k] * attentionWeights[k][j];
-                }
-            }
+    // input row of the workspace = embedding of tokenId, in the model's precision
+    private void embed(Workspace workspace, int row, int tokenId) {
+        if (precision == Precision.FLOAT32) {
+            embeddings.getEmbedding(tokenId, workspace.floatInputs.data(), row * tokenVectorDimension);
+        } else {
+            embeddings.getEmbedding(tokenId, workspace.inputs.data(), row * tokenVectorDimension);
+        }
+    }
+    
+    private void addPosition(Workspace workspace, int row, int pos) {
+        if (precision == Precision.FLOAT32) {
+            positionalEncoder.addTo(workspace.floatInputs.data(), row * tokenVectorDimension, pos);
+        } else {
+            positionalEncoder.addTo(workspace.inputs.data(), row * tokenVectorDimension, pos);
         }
-        return output;
+    }
+    
+    // Simplified attention operation: out[0, rows) += inputs[0, rows) × attentionWeights
+    private void applyAttention(Workspace workspace, DoubleTensor out, int rows) {
+        if (precision == Precision.FLOAT32) {
+            Gemm.multiplyAdd(workspace.floatInputs, floatAttentionWeights, out, rows);
+        } else {
+            Gemm.multiplyAdd(workspace.inputs, attentionWeights, out, rows);
+        }
+    }
+    
+    // same, into rows that live in separate caches
+    private void applyAttention(Workspace workspace, double[][] out, int rows) {
+        if (precision == Precision.FLOAT32) {
+            Gemm.multiplyAdd(workspace.floatInputs, floatAttentionWeights, out, rows);
+        } else {
+            Gemm.multiplyAdd(workspace.inputs, attentionWeights, out, rows);
+        }
+    }
+    
+    private Workspace newWorkspace() {
+        return new Workspace(tokenVectorDimension, tokenizer.getVocabSize(), getMaxContextLength(), precision);
+    }
+    
+    /**
+     * The current thread's workspace, or a temporary one if that is already in
+     * use further up the stack.
+     */
+    private Workspace borrowWorkspace() {
+        Workspace workspace = workspaces.get();
+        if (workspace == null) {
+            workspace = newWorkspace();
+            workspaces.set(workspace);
+        }
+        if (!workspace.borrow()) {
+            workspace = newWorkspace();
+            workspace.borrow();
+        }
+        return workspace;
     }
     
     public String generate(String prompt, int maxLength) {
-        List<Integer> tokenIds = tokenizer.encode(prompt);
-        Random random = new Random();
-        
-        for (int i = 0; i < maxLength; i++) {
-            double[][] hiddenStates = processInput(tokenIds);
-            double[] logits = calculateLogits(hiddenStates[hiddenStates.length-1]);
-            
-            // Add some randomness instead of always taking argmax
-            int nextToken = sampleFromLogits(logits, random, 0.7);
-            tokenIds.add(nextToken);
+        return generate(prompt, maxLength, Sampler.temperature(0.7));
+    }
+    
+    public String generate(String prompt, int maxLength, Sampler sampler) {
+        int[] tokenIds = generate(tokenizer.encodeToArray(prompt), maxLength, sampler);
+        return tokenizer.decodeToString(tokenIds, 0, tokenIds.length);
+    }
+    
+    /**
+     * Returns the prompt ids followed by maxLength sampled ids.
+     */
+    public int[] generate(int[] promptIds, int maxLength, Sampler sampler) {
+        Generation generation = startGeneration(promptIds, maxLength, sampler);
+        List<Generation> batch = List.of(generation);
+        while (!generation.isFinished()) {
+            decodeStep(batch);
         }
-        
-        return tokenizer.decodeToString(tokenIds);
+        return generation.getTokenIds();
     }
-
-    private int sampleFromLogits(double[] logits, Random random, double temperature) {
-        // Apply temperature and convert to probabilities
-        double[] probs = softmaxWithTemperature(logits, temperature);
+    
+    /**
+     * Streams the generated tokens to the listener as they are sampled and
+     * returns the prompt and generated text. Generation ends early when one of
+     * the stop sequences is produced or the listener returns false.
+     */
+    public String generate(String prompt, int maxLength, Sampler sampler, List<String> stopSequences,
+            TokenListener listener) {
+        int[][] stops = new int[stopSequences.size()][];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = tokenizer.encodeToArray(stopSequences.get(i));
+        }
+        Generation generation = startGeneration(tokenizer.encodeToArray(prompt), maxLength, sampler, stops, listener);
+        List<Generation> batch = List.of(generation);
+        while (!generation.isFinished()) {
+            decodeStep(batch);
+        }
+        int[] tokenIds = generation.getTokenIds();
+        return tokenizer.decodeToString(tokenIds, 0, tokenIds.length);
+    }
+    
+    public Generation startGeneration(int[] promptIds, int maxNewTokens, Sampler sampler) {
+        return startGeneration(promptIds, maxNewTokens, sampler, null, null);
+    }
+    
+    /**
+     * Checks the prompt and prefills a new generation's cache with it in one
+     * batched projection.
+     *
+     * @param stopSequences token ids that end the generation, or null
+     * @param listener      receives each generated token, or null
+     */
+    public Generation startGeneration(int[] promptIds, int maxNewTokens, Sampler sampler, int[][] stopSequences,
+            TokenListener listener) {
+        if (promptIds.length == 0) {
+            throw new IllegalArgumentException("Prompt must contain at least one token");
+        }
+        // the last sampled token is never fed back, so it needs no position of its own
+        if (promptIds.length + maxNewTokens > getMaxContextLength() + 1) {
+            throw new IllegalArgumentException("Prompt plus " + maxNewTokens + " tokens exceeds max context length " + getMaxContextLength());
+        }
+        Generation generation = new Generation(promptIds, maxNewTokens, tokenVectorDimension,
+                tokenizer.getVocabSize(), sampler, new Random(), stopSequences, listener);
         
-        // Sample according to probabilities
-        double r = random.nextDouble();
-        double sum = 0;
-        for (int i = 0; i < probs.length; i++) {
-            sum += probs[i];
-            if (r <= sum) return i;
+        // Prefill the cache with the prompt, then only project the newest token each step
+        Workspace workspace = borrowWorkspace();
+        try {
+            processInput(workspace, promptIds, 0, promptIds.length);
+            for (int pos = 0; pos < promptIds.length; pos++) {
+                System.arraycopy(workspace.hidden.data(), pos * tokenVectorDimension, generation.cache.nextSlot(), 0,
+                        tokenVectorDimension);
+            }
+        } finally {
+            workspace.release();
+        }
+        return generation;
+    }
+    
+    /**
+     * Samples one more token for every unfinished generation in the batch. The
+     * logits of the whole batch come from one multiply, and the new tokens are
+     * projected into their caches by another. Generations cancelled from
+     * another thread while the step runs still get this step's token.
+     */
+    public void decodeStep(List<Generation> batch) {
+        long start = System.nanoTime();
+        long allocated = StepMetrics.allocatedBytes();
+        Workspace workspace = borrowWorkspace();
+        int rows = 0;
+        try {
+            rows = decodeStep(workspace, batch);
+        } finally {
+            workspace.clearBatch();
+            workspace.release();
+        }
+        if (rows > 0) {
+            StepMetrics.DECODE.record(rows, start, allocated);
         }
-        return probs.length - 1;
     }
     
-    private double[] calculateLogits(double[] hiddenState) {
-        double[] logits = new double[tokenizer.getVocabSize()];
+    // returns the number of generations that got a token
+    private int decodeStep(Workspace workspace, List<Generation> batch) {
+        workspace.ensureBatch(batch.size());
+        Generation[] active = workspace.active;
+        double[][] logits = workspace.logits;
+        int rows = 0;
+        for (int b = 0; b < batch.size(); b++) {
+            Generation generation = batch.get(b);
+            if (generation.isFinished()) continue;
+            active[rows] = generation;
+            logits[rows++] = generation.logits;
+        }
+        if (rows == 0) return 0;
+        workspace.ensureRows(rows);
+        PhaseEvent phase = PhaseEvent.start(Phase.LOGITS);
+        // gather the last cached state of each generation into one rows x dim tensor
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(active[i].cache.last(), 0, workspace.hidden.data(), i * tokenVectorDimension,
+                    tokenVectorDimension);
+        }
+        calculateLogits(workspace, rows, logits);
+        phase.finish(rows);
         
-        // Matrix multiplication: hiddenState × outputLayer
-        for (int i = 0; i < tokenizer.getVocabSize(); i++) {
-            logits[i] = 0;
-            for (int j = 0; j < tokenVectorDimension; j++) {
-                logits[i] += hiddenState[j] * outputLayer[j][i];
+        phase = PhaseEvent.start(Phase.SAMPLING);
+        Generation[] pending = workspace.pending;
+        int[] nextTokens = workspace.nextTokens;
+        int pendingCount = 0;
+        for (int i = 0; i < rows; i++) {
+            Generation generation = active[i];
+            
+            // Add some randomness instead of always taking argmax
+            int nextToken = generation.sampler.sample(generation.logits, generation.random);
+            generation.append(nextToken);
+            generation.emit(tokenizer);
+            if (!generation.isFinished()) {
+                pending[pendingCount] = generation;
+                nextTokens[pendingCount++] = nextToken;
             }
         }
+        phase.finish(rows);
         
-        return logits;
+        if (pendingCount > 0) {
+            double[][] outputs = workspace.outputs;
+            phase = PhaseEvent.start(Phase.EMBEDDING);
+            for (int i = 0; i < pendingCount; i++) {
+                embed(workspace, i, nextTokens[i]);
+            }
+            phase.finish(pendingCount);
+            phase = PhaseEvent.start(Phase.POSITIONAL_ENCODING);
+            for (int i = 0; i < pendingCount; i++) {
+                addPosition(workspace, i, pending[i].cache.size());
+            }
+            phase.finish(pendingCount);
+            phase = PhaseEvent.start(Phase.ATTENTION);
+            for (int i = 0; i < pendingCount; i++) {
+                outputs[i] = pending[i].cache.nextSlot();
+                Arrays.fill(outputs[i], 0.0);
+            }
+            applyAttention(workspace, outputs, pendingCount);
+            phase.finish(pendingCount);
+        }
+        return rows;
+    }
+
+    /**
+     * Verifies up to draftCount proposed tokens in one pass: the drafts are
+     * projected together, logits for the last cached state and every draft
+     * come from one multiply, and the sampler then walks the positions in order
+     * until it picks something other than the draft. Appends between one and
+     * draftCount + 1 tokens and returns how many drafts were accepted.
+     */
+    int speculativeStep(Generation generation, int[] draft, int draftCount) {
+        long start = System.nanoTime();
+        long allocated = StepMetrics.allocatedBytes();
+        int before = generation.getGeneratedCount();
+        int accepted = verifyDraft(generation, draft, draftCount);
+        StepMetrics.DECODE.record(generation.getGeneratedCount() - before, start, allocated);
+        return accepted;
     }
     
-    private double[] softmaxWithTemperature(double[] logits, double temperature) {
-        double[] probs = new double[logits.length];
-        double maxLogit = Double.NEGATIVE_INFINITY;
-        
-        // Find maximum logit for numerical stability
-        for (double logit : logits) {
-            if (logit > maxLogit) {
-                maxLogit = logit;
+    private int verifyDraft(Generation generation, int[] draft, int draftCount) {
+        Workspace workspace = borrowWorkspace();
+        try {
+            return verifyDraft(workspace, generation, draft, draftCount);
+        } finally {
+            workspace.clearBatch();
+            workspace.release();
+        }
+    }
+    
+    private int verifyDraft(Workspace workspace, Generation generation, int[] draft, int draftCount) {
+        int count = Math.max(0, Math.min(draftCount, generation.remaining() - 1));
+        int start = generation.cache.size();
+        workspace.ensureRows(count + 1);
+        // row 0 of hidden is the last cached state, rows 1..count (draftStates) the projected drafts
+        double[] hiddenStates = workspace.hidden.data();
+        System.arraycopy(generation.cache.last(), 0, hiddenStates, 0, tokenVectorDimension);
+        if (count > 0) {
+            PhaseEvent phase = PhaseEvent.start(Phase.EMBEDDING);
+            for (int i = 0; i < count; i++) {
+                embed(workspace, i, draft[i]);
             }
+            phase.finish(count);
+            phase = PhaseEvent.start(Phase.POSITIONAL_ENCODING);
+            for (int i = 0; i < count; i++) {
+                addPosition(workspace, i, start + i);
+            }
+            phase.finish(count);
+            phase = PhaseEvent.start(Phase.ATTENTION);
+            Arrays.fill(hiddenStates, tokenVectorDimension, (count + 1) * tokenVectorDimension, 0.0);
+            applyAttention(workspace, workspace.draftStates, count);
+            phase.finish(count);
         }
         
-        // Apply temperature and calculate exponentials
-        double sumExp = 0.0;
-        for (int i = 0; i < logits.length; i++) {
-            double scaledLogit = (logits[i] - maxLogit) / temperature;
-            probs[i] = Math.exp(scaledLogit);
-            sumExp += probs[i];
+        if (generation.draftLogits.length < count + 1) {
+            generation.draftLogits = new double[count + 1][tokenizer.getVocabSize()];
         }
+        double[][] logits = generation.draftLogits;
+        PhaseEvent phase = PhaseEvent.start(Phase.LOGITS);
+        calculateLogits(workspace, count + 1, logits);
+        phase.finish(count + 1);
         
-        // Normalize to probabilities
-        for (int i = 0; i < probs.length; i++) {
-            probs[i] /= sumExp;
+        phase = PhaseEvent.start(Phase.SAMPLING);
+        int accepted = 0;
+        int nextToken;
+        while (true) {
+            nextToken = generation.sampler.sample(logits[accepted], generation.random);
+            generation.append(nextToken);
+            generation.emit(tokenizer);
+            boolean match = accepted < count && nextToken == draft[accepted];
+            if (match) {
+                accepted++;
+            }
+            if (!match || generation.isFinished()) {
+                break;
+            }
+            // the draft's projected state is already the right cache row
+            System.arraycopy(hiddenStates, accepted * tokenVectorDimension, generation.cache.nextSlot(), 0,
+                    tokenVectorDimension);
+        }
+        phase.finish(accepted + 1);
+        if (generation.isFinished()) {
+            return accepted;
         }
         
-        return probs;
+        // the token sampled in place of a rejected draft still has to be projected into the cache
+        phase = PhaseEvent.start(Phase.EMBEDDING);
+        embed(workspace, 0, nextToken);
+        phase.finish(1);
+        phase = PhaseEvent.start(Phase.POSITIONAL_ENCODING);
+        addPosition(workspace, 0, generation.cache.size());
+        phase.finish(1);
+        phase = PhaseEvent.start(Phase.ATTENTION);
+        double[] slot = generation.cache.nextSlot();
+        Arrays.fill(slot, 0.0);
+        workspace.outputs[0] = slot;
+        applyAttention(workspace, workspace.outputs, 1);
+        phase.finish(1);
+        return accepted;
     }
     
-    public void saveModel(String filePath) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            oos.writeObject(this);
+    // logits[i] = row i of workspace.hidden × outputLayer, for the first rows rows
+    private void calculateLogits(Workspace workspace, int rows, double[][] logits) {
+        // Matrix multiplication: hiddenStates × outputLayer, walked row by row of outputLayer
+        double[] states = workspace.hidden.data();
+        for (int i = 0; i < rows; i++) {
+            if (quantizedOutputLayer != null) {
+                quantizedOutputLayer.vectorMultiply(states, i * tokenVectorDimension, logits[i]);
+            } else {
+                Arrays.fill(logits[i], 0.0);
+            }
         }
+        if (floatOutputLayer != null) {
+            // narrowing rows x dim values is noise next to streaming the dim x vocab layer
+            float[] narrowed = workspace.floatHidden.data();
+            for (int i = 0; i < rows * tokenVectorDimension; i++) {
+                narrowed[i] = (float) states[i];
+            }
+            Gemm.multiplyAdd(workspace.floatHidden, floatOutputLayer, logits, rows);
+        } else if (quantizedOutputLayer == null) {
+            Gemm.multiplyAdd(workspace.hidden, outputLayer, logits, rows);
+        }
+    }
+    
+    public int getMaxContextLength() {
+        return positionalEncoder.getMaxContextLength();
     }
     
-    public static TransformerModel loadModel(String filePath) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath))) {
-            return (TransformerModel) ois.readObject();
+    /**
+     * Post-training quantization of the embedding matrix and output layer for
+     * inference. The full-precision copies are released, so after this the
+     * model can generate but can no longer be trained or saved.
+     */
+    public void quantize(QuantizedMatrix.Format format) {
+        checkNotQuantized();
+        embeddings.quantize(format);
+        quantizedOutputLayer = floatOutputLayer != null ? QuantizedMatrix.quantize(floatOutputLayer, format)
+                : QuantizedMatrix.quantize(outputLayer, format);
+        outputLayer = null;
+        floatOutputLayer = null;
+    }
+    
+    public boolean isQuantized() {
+        return quantizedOutputLayer != null;
+    }
+    
+    private void checkNotQuantized() {
+        if (isQuantized()) {
+            throw new IllegalStateException("Model has been quantized for inference");
         }
     }
-}
\ No newline at end of file
+    
+    public SimpleTokenizer getTokenizer() {
+        return tokenizer;
+    }
+    
+    EmbeddingGenerator getEmbeddings() {
+        return embeddings;
+    }
+    
+    DoubleTensor getAttentionWeights() {
+        return attentionWeights;
+    }
+    
+    DoubleTensor getOutputLayer() {
+        return outputLayer;
+    }
+    
+    FloatTensor getFloatAttentionWeights() {
+        return floatAttentionWeights;
+    }
+    
+    FloatTensor getFloatOutputLayer() {
+        return floatOutputLayer;
+    }
+    
+    public Precision getPrecision() {
+        return precision;
+    }
+    
+    public int getTokenVectorDimension() {
+        return tokenVectorDimension;
+    }
+    
+    /**
+     * Writes a binary checkpoint, see {@link ModelCheckpoint}.
+     */
+    public void saveModel(String filePath) throws IOException {
+        checkNotQuantized();
+        ModelCheckpoint.write(this, Path.of(filePath));
+    }
+    
+    public static TransformerModel loadModel(String filePath) throws IOException {
+        return ModelCheckpoint.read(Path.of(filePath));
+    }
+}
@@ -0,0 +1,122 @@
+package com.llm;
+
+import java.util.Arrays;
+
+import com.compute.DoubleTensor;
+import com.compute.FloatTensor;
+
+/**
+ * Scratch buffers that one thread's {@link TransformerModel} steps borrow
+ * instead of allocating: the embedded input rows in the model's precision, the
+ * projected hidden states, their float copy for FLOAT32 logits, a gradient for
+ * {@code train} calls and the per-generation bookkeeping of a decode step.
+ *
+ * Row buffers start with maxContextLength rows, which bounds every training
+ * sequence, prompt and speculative draft, and only grow for a decode batch
+ * with more generations than that. Once a thread has seen its largest step,
+ * further steps allocate nothing. A workspace is used by one step at a time;
+ * see {@link #borrow()}.
+ */
+final class Workspace {
+
+	private final int tokenVectorDimension;
+	private final int vocabSize;
+	private final Precision precision;
+	private boolean borrowed;
+	private int capacity;
+	private SparseGradient gradients;
+
+	// embedding + positional encoding, rows x dim; only the one matching precision is set
+	DoubleTensor inputs;
+	FloatTensor floatInputs;
+	// projected hidden states, rows x dim, and the same buffer from row 1 on
+	DoubleTensor hidden;
+	DoubleTensor draftStates;
+	// hidden narrowed to float for the FLOAT32 output layer
+	FloatTensor floatHidden;
+
+	Generation[] active = new Generation[0];
+	Generation[] pending = new Generation[0];
+	double[][] logits = new double[0][];
+	double[][] outputs = new double[0][];
+	int[] nextTokens = new int[0];
+
+	Workspace(int tokenVectorDimension, int vocabSize, int maxContextLength, Precision precision) {
+		this.tokenVectorDimension = tokenVectorDimension;
+		this.vocabSize = vocabSize;
+		this.precision = precision;
+		ensureRows(maxContextLength);
+	}
+
+	/**
+	 * Marks the workspace as in use; false if it already is, e.g. when a
+	 * fork/join worker that is waiting on part of one step runs another step,
+	 * and the caller should use a workspace of its own.
+	 */
+	boolean borrow() {
+		if (borrowed) {
+			return false;
+		}
+		borrowed = true;
+		return true;
+	}
+
+	void release() {
+		borrowed = false;
+	}
+
+	/**
+	 * Makes the row buffers hold at least rows rows. Contents are not kept.
+	 */
+	void ensureRows(int rows) {
+		if (rows <= capacity) {
+			return;
+		}
+		capacity = rows;
+		if (precision == Precision.FLOAT32) {
+			floatInputs = FloatTensor.zeros(rows, tokenVectorDimension);
+			floatHidden = FloatTensor.zeros(rows, tokenVectorDimension);
+		} else {
+			inputs = DoubleTensor.zeros(rows, tokenVectorDimension);
+		}
+		hidden = DoubleTensor.zeros(rows, tokenVectorDimension);
+		draftStates = hidden.slice(0, 1, rows);
+	}
+
+	/**
+	 * Makes the decode bookkeeping arrays hold a batch of size generations.
+	 */
+	void ensureBatch(int size) {
+		if (size <= active.length) {
+			return;
+		}
+		active = new Generation[size];
+		pending = new Generation[size];
+		logits = new double[size][];
+		outputs = new double[size][];
+		nextTokens = new int[size];
+	}
+
+	/**
+	 * Drops the references a decode step left behind, so finished generations
+	 * are not kept alive by an idle workspace.
+	 */
+	void clearBatch() {
+		Arrays.fill(active, null);
+		Arrays.fill(pending, null);
+		Arrays.fill(logits, null);
+		Arrays.fill(outputs, null);
+	}
+
+	/**
+	 * An empty output-layer gradient, created on first use.
+	 */
+	SparseGradient gradients() {
+		if (gradients == null) {
+			gradients = new SparseGradient(tokenVectorDimension, vocabSize);
+		} else {
+			gradients.clear();
+		}
+		return gradients;
+	}
+}
@@ -0,0 +1,75 @@
+package com.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of nanosecond durations. Every power of two
+ * is split into {@value #SUB_BUCKETS} buckets, so a percentile is reported with
+ * at most 12.5% error while recording is a couple of bit operations and one
+ * atomic increment. Covers up to about 2^40 ns (18 minutes); longer values
+ * land in the last bucket.
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT + 1) * SUB_BUCKETS);
+
+	void record(long nanos) {
+		counts.incrementAndGet(index(Math.max(0, nanos)));
+	}
+
+	private static int index(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT) {
+			return (MAX_EXPONENT + 1) * SUB_BUCKETS - 1;
+		}
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	// largest value that falls into the bucket
+	private static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		long lower = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+		return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	/**
+	 * Value at or below which the given fraction of recorded durations fall, 0
+	 * when nothing was recorded.
+	 */
+	long percentile(double fraction) {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(counts.length() - 1);
+	}
+
+	void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+	}
+}
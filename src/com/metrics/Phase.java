@@ -0,0 +1,20 @@
+package com.metrics;
+
+/**
+ * The parts of a training or decode step that are timed separately.
+ */
+public enum Phase {
+	EMBEDDING("embedding"),
+	POSITIONAL_ENCODING("positional encoding"),
+	ATTENTION("attention"),
+	LOGITS("logits"),
+	SAMPLING("sampling"),
+	GRADIENT("gradient"),
+	WEIGHT_UPDATE("weight update");
+
+	final String label;
+
+	Phase(String label) {
+		this.label = label;
+	}
+}
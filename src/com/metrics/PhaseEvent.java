@@ -0,0 +1,53 @@
+package com.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning one {@link Phase} of a step. When no recording has the
+ * event enabled, start returns a shared instance that is never committed, so
+ * start/finish reduce to a flag check and allocate nothing even where the JIT
+ * cannot eliminate the event object.
+ */
+@Name("com.llm.Phase")
+@Label("Model Phase")
+@Category({ "LLM" })
+@Description("One phase of a training or decode step")
+@StackTrace(false)
+public final class PhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Tokens")
+	int tokens;
+
+	private static final EventType TYPE = EventType.getEventType(PhaseEvent.class);
+	private static final PhaseEvent DISABLED = new PhaseEvent();
+
+	private PhaseEvent() {
+	}
+
+	public static PhaseEvent start(Phase phase) {
+		if (!TYPE.isEnabled()) {
+			return DISABLED;
+		}
+		PhaseEvent event = new PhaseEvent();
+		event.phase = phase.label;
+		event.begin();
+		return event;
+	}
+
+	public void finish(int tokenCount) {
+		// a recording started since start() must not commit the shared instance
+		if (this != DISABLED && shouldCommit()) {
+			tokens = tokenCount;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.llm.Step")
+@Label("Model Step")
+@Category({ "LLM" })
+@Description("One training sequence or one batched decode step")
+@StackTrace(false)
+final class StepEvent extends Event {
+
+	@Label("Kind")
+	String kind;
+
+	@Label("Tokens")
+	int tokens;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocatedBytes;
+}
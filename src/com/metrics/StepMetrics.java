@@ -0,0 +1,156 @@
+package com.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.EventType;
+
+/**
+ * Always-on counters for training and decode steps: throughput, a latency
+ * histogram and allocated bytes, published over JMX (disable with
+ * {@code -Dllm.jmx=false}) and mirrored as {@link StepEvent}s to JFR. Recording
+ * a step costs two clock reads, one thread allocation counter read and a few
+ * uncontended adds, so it can stay on outside of profiling sessions.
+ *
+ * <pre>
+ * long start = System.nanoTime();
+ * long allocated = StepMetrics.allocatedBytes();
+ * ... step ...
+ * StepMetrics.TRAIN.record(tokens, start, allocated);
+ * </pre>
+ */
+public final class StepMetrics implements StepMetricsMXBean {
+
+	public static final StepMetrics TRAIN = new StepMetrics("train");
+	public static final StepMetrics DECODE = new StepMetrics("decode");
+
+	private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+	private static final EventType STEP_EVENT = EventType.getEventType(StepEvent.class);
+
+	static {
+		if (Boolean.parseBoolean(System.getProperty("llm.jmx", "true"))) {
+			TRAIN.register();
+			DECODE.register();
+		}
+	}
+
+	private final String kind;
+	private final LongAdder steps = new LongAdder();
+	private final LongAdder tokens = new LongAdder();
+	private final LongAdder allocated = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAccumulator firstStart = new LongAccumulator(Math::min, Long.MAX_VALUE);
+	private final LongAccumulator lastEnd = new LongAccumulator(Math::max, Long.MIN_VALUE);
+	private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+
+	private StepMetrics(String kind) {
+		this.kind = kind;
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		try {
+			if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+					&& threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads;
+			}
+		} catch (RuntimeException | LinkageError e) {
+			// no allocation figures on this JVM
+		}
+		return null;
+	}
+
+	private void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName("com.llm:type=StepMetrics,name=" + kind));
+		} catch (JMException e) {
+			// already registered by another class loader; the counters still work
+		}
+	}
+
+	/**
+	 * Bytes allocated so far by the current thread, or 0 if not measurable.
+	 */
+	public static long allocatedBytes() {
+		return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+	}
+
+	public void record(int tokenCount, long startNanos, long startAllocatedBytes) {
+		long end = System.nanoTime();
+		long bytes = allocatedBytes() - startAllocatedBytes;
+		long nanos = end - startNanos;
+		steps.increment();
+		tokens.add(tokenCount);
+		allocated.add(bytes);
+		latency.record(nanos);
+		maxLatency.accumulate(nanos);
+		firstStart.accumulate(startNanos);
+		lastEnd.accumulate(end);
+
+		// checked before creating the event so a step with JFR off stays allocation-free
+		if (STEP_EVENT.isEnabled()) {
+			StepEvent event = new StepEvent();
+			event.kind = kind;
+			event.tokens = tokenCount;
+			event.allocatedBytes = bytes;
+			event.commit();
+		}
+	}
+
+	@Override
+	public long getSteps() {
+		return steps.sum();
+	}
+
+	@Override
+	public long getTokens() {
+		return tokens.sum();
+	}
+
+	@Override
+	public double getTokensPerSecond() {
+		long elapsed = lastEnd.get() - firstStart.get();
+		return elapsed <= 0 ? 0 : tokens.sum() * 1e9 / elapsed;
+	}
+
+	@Override
+	public double getLatencyP50Millis() {
+		return latency.percentile(0.5) / 1e6;
+	}
+
+	@Override
+	public double getLatencyP90Millis() {
+		return latency.percentile(0.9) / 1e6;
+	}
+
+	@Override
+	public double getLatencyP99Millis() {
+		return latency.percentile(0.99) / 1e6;
+	}
+
+	@Override
+	public double getLatencyMaxMillis() {
+		return maxLatency.get() / 1e6;
+	}
+
+	@Override
+	public long getAllocatedBytesPerStep() {
+		long count = steps.sum();
+		return count == 0 ? 0 : allocated.sum() / count;
+	}
+
+	@Override
+	public void reset() {
+		steps.reset();
+		tokens.reset();
+		allocated.reset();
+		latency.reset();
+		firstStart.reset();
+		lastEnd.reset();
+		maxLatency.reset();
+	}
+}
@@ -0,0 +1,34 @@
+package com.metrics;
+
+/**
+ * Management view of {@link StepMetrics}, registered as
+ * {@code com.llm:type=StepMetrics,name=train} and {@code name=decode}.
+ */
+public interface StepMetricsMXBean {
+
+	long getSteps();
+
+	long getTokens();
+
+	/**
+	 * Tokens divided by the wall-clock time from the first step's start to the
+	 * last step's end since the last reset.
+	 */
+	double getTokensPerSecond();
+
+	double getLatencyP50Millis();
+
+	double getLatencyP90Millis();
+
+	double getLatencyP99Millis();
+
+	double getLatencyMaxMillis();
+
+	/**
+	 * Heap allocated by the stepping thread per step, on average; 0 if the JVM
+	 * cannot measure it.
+	 */
+	long getAllocatedBytesPerStep();
+
+	void reset();
+}
@@ -0,0 +1,352 @@
+package com.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.llm.Generation;
+import com.llm.Sampler;
+import com.llm.SimpleTokenizer;
+import com.llm.TokenListener;
+import com.llm.TransformerModel;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal HTTP front end for a trained model.
+ *
+ * Every connection is handled on its own virtual thread, which only parses the
+ * request and waits. One scheduler thread owns the model and does continuous
+ * batching: before every decode step it admits waiting requests into the
+ * running batch (up to {@code maxBatchSize}), advances all of them by one token
+ * with a single batched forward pass, and completes the ones that finished, so
+ * a long generation never holds a short one back. At most
+ * {@code maxQueueDepth} requests are accepted at a time; beyond that the
+ * server answers 503 instead of queueing without bound.
+ *
+ * With {@code stream=true} the response is chunked and each token is written
+ * as soon as it is sampled; a client that disconnects cancels its generation.
+ * Every {@code stop} parameter is a stop sequence.
+ *
+ * <pre>
+ * POST /generate?maxTokens=30&amp;temperature=0.7&amp;topK=0&amp;topP=1.0&amp;stop=.&amp;stream=true   body: prompt text
+ * GET  /health
+ * </pre>
+ */
+public class InferenceServer implements AutoCloseable {
+
+	private static final int DEFAULT_MAX_TOKENS = 30;
+	private static final int MAX_PROMPT_BYTES = 1 << 16;
+	// identity-compared marker closing a streamed response
+	private static final String END_OF_STREAM = new String("");
+
+	private final TransformerModel model;
+	private final SimpleTokenizer tokenizer;
+	private final int maxBatchSize;
+	private final Semaphore admission;
+	private final LinkedBlockingQueue<Request> waiting = new LinkedBlockingQueue<>();
+	private final HttpServer server;
+	private final ExecutorService handlers;
+	private final Thread scheduler;
+
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong generatedTokens = new AtomicLong();
+	private volatile int activeBatchSize;
+	private volatile boolean running = true;
+
+	public InferenceServer(TransformerModel model, int port, int maxBatchSize, int maxQueueDepth) throws IOException {
+		if (maxBatchSize <= 0 || maxQueueDepth <= 0) {
+			throw new IllegalArgumentException("Batch size and queue depth must be positive");
+		}
+		this.model = model;
+		this.tokenizer = model.getTokenizer();
+		this.maxBatchSize = maxBatchSize;
+		this.admission = new Semaphore(maxQueueDepth);
+		this.handlers = Executors.newVirtualThreadPerTaskExecutor();
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.setExecutor(handlers);
+		server.createContext("/generate", this::handleGenerate);
+		server.createContext("/health", this::handleHealth);
+		this.scheduler = new Thread(this::schedule, "inference-scheduler");
+		scheduler.setDaemon(true);
+	}
+
+	public void start() {
+		scheduler.start();
+		server.start();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handleGenerate(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, "Use POST\n");
+				return;
+			}
+			Request request;
+			try {
+				request = parse(exchange);
+			} catch (IllegalArgumentException e) {
+				respond(exchange, 400, e.getMessage() + "\n");
+				return;
+			}
+			if (!admission.tryAcquire()) {
+				rejected.incrementAndGet();
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				respond(exchange, 503, "Server is at capacity\n");
+				return;
+			}
+			try {
+				waiting.add(request);
+				if (request.tokens != null) {
+					stream(exchange, request);
+					return;
+				}
+				int[] tokenIds = request.result.get();
+				respond(exchange, 200, tokenizer.decodeToString(tokenIds, 0, tokenIds.length) + "\n");
+			} catch (ExecutionException e) {
+				respond(exchange, 500, "Generation failed: " + e.getCause() + "\n");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				admission.release();
+			}
+		}
+	}
+
+	private void stream(HttpExchange exchange, Request request) throws InterruptedException {
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		try (OutputStream out = exchange.getResponseBody()) {
+			exchange.sendResponseHeaders(200, 0);
+			out.write((tokenizer.decodeToString(request.promptIds, 0, request.promptIds.length)).getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			String token;
+			while ((token = request.tokens.take()) != END_OF_STREAM) {
+				out.write((" " + token).getBytes(StandardCharsets.UTF_8));
+				out.flush();
+			}
+			out.write('\n');
+		} catch (IOException e) {
+			// client went away: stop spending decode steps on it
+			request.cancelled = true;
+		}
+	}
+
+	private Request parse(HttpExchange exchange) throws IOException {
+		Map<String, List<String>> params = queryParameters(exchange.getRequestURI().getRawQuery());
+		String prompt;
+		try (InputStream body = exchange.getRequestBody()) {
+			byte[] bytes = body.readNBytes(MAX_PROMPT_BYTES + 1);
+			if (bytes.length > MAX_PROMPT_BYTES) {
+				throw new IllegalArgumentException("Prompt is larger than " + MAX_PROMPT_BYTES + " bytes");
+			}
+			prompt = new String(bytes, StandardCharsets.UTF_8);
+		}
+		int[] promptIds = tokenizer.encodeToArray(prompt);
+		try {
+			int maxTokens = Integer.parseInt(parameter(params, "maxTokens", String.valueOf(DEFAULT_MAX_TOKENS)));
+			Sampler sampler = new Sampler(Double.parseDouble(parameter(params, "temperature", "0.7")),
+					Integer.parseInt(parameter(params, "topK", "0")),
+					Double.parseDouble(parameter(params, "topP", "1.0")));
+			if (maxTokens < 0) {
+				throw new IllegalArgumentException("maxTokens must not be negative");
+			}
+			// prefill happens on the scheduler, but the limits are checked here so bad input gets a 400
+			if (promptIds.length == 0) {
+				throw new IllegalArgumentException("Prompt must contain at least one token");
+			}
+			if (promptIds.length + maxTokens > model.getMaxContextLength() + 1) {
+				throw new IllegalArgumentException("Prompt plus " + maxTokens + " tokens exceeds max context length "
+						+ model.getMaxContextLength());
+			}
+			List<String> stops = params.getOrDefault("stop", List.of());
+			int[][] stopSequences = new int[stops.size()][];
+			for (int i = 0; i < stopSequences.length; i++) {
+				stopSequences[i] = tokenizer.encodeToArray(stops.get(i));
+			}
+			boolean stream = Boolean.parseBoolean(parameter(params, "stream", "false"));
+			return new Request(promptIds, maxTokens, sampler, stopSequences, stream);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number: " + e.getMessage());
+		}
+	}
+
+	private static String parameter(Map<String, List<String>> params, String name, String defaultValue) {
+		List<String> values = params.get(name);
+		return values == null ? defaultValue : values.get(values.size() - 1);
+	}
+
+	private static Map<String, List<String>> queryParameters(String query) {
+		Map<String, List<String>> params = new HashMap<>();
+		if (query == null || query.isEmpty()) {
+			return params;
+		}
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			String key = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			params.computeIfAbsent(URLDecoder.decode(key, StandardCharsets.UTF_8), k -> new ArrayList<>())
+					.add(URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return params;
+	}
+
+	private void handleHealth(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			respond(exchange, 200, "ok\nactive " + activeBatchSize + "\nwaiting " + waiting.size() + "\ncompleted "
+					+ completed.get() + "\nrejected " + rejected.get() + "\ngeneratedTokens " + generatedTokens.get()
+					+ "\n");
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private void schedule() {
+		List<Request> active = new ArrayList<>();
+		List<Generation> batch = new ArrayList<>();
+		while (running) {
+			try {
+				// block only when there is nothing to decode
+				if (active.isEmpty()) {
+					Request first = waiting.poll(100, TimeUnit.MILLISECONDS);
+					if (first == null) continue;
+					admit(first, active);
+				}
+				Request next;
+				while (active.size() < maxBatchSize && (next = waiting.poll()) != null) {
+					admit(next, active);
+				}
+
+				batch.clear();
+				long generatedBefore = 0;
+				for (Request request : active) {
+					if (request.cancelled) {
+						request.generation.cancel();
+					}
+					batch.add(request.generation);
+					generatedBefore += request.generation.getGeneratedCount();
+				}
+				if (!batch.isEmpty()) {
+					model.decodeStep(batch);
+					// finished and cancelled generations add nothing, and a matched stop sequence is taken back out
+					long generatedAfter = 0;
+					for (Generation generation : batch) {
+						generatedAfter += generation.getGeneratedCount();
+					}
+					generatedTokens.addAndGet(generatedAfter - generatedBefore);
+				}
+				active.removeIf(request -> {
+					if (!request.generation.isFinished()) return false;
+					request.complete(request.generation.getTokenIds());
+					completed.incrementAndGet();
+					return true;
+				});
+				activeBatchSize = active.size();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (RuntimeException e) {
+				// a failed step fails the whole batch, not the server
+				for (Request request : active) {
+					request.fail(e);
+				}
+				active.clear();
+				activeBatchSize = 0;
+			}
+		}
+		IllegalStateException stopped = new IllegalStateException("Server stopped");
+		for (Request request : active) {
+			request.fail(stopped);
+		}
+		Request request;
+		while ((request = waiting.poll()) != null) {
+			request.fail(stopped);
+		}
+	}
+
+	private void admit(Request request, List<Request> active) {
+		try {
+			TokenListener listener = request.tokens == null ? null : (tokenId, token) -> {
+				request.tokens.add(token);
+				return !request.cancelled;
+			};
+			request.generation = model.startGeneration(request.promptIds, request.maxTokens, request.sampler,
+					request.stopSequences, listener);
+		} catch (RuntimeException e) {
+			request.fail(e);
+			return;
+		}
+		if (request.generation.isFinished()) {
+			request.complete(request.generation.getTokenIds());
+			completed.incrementAndGet();
+		} else {
+			active.add(request);
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		server.stop(0);
+		scheduler.interrupt();
+		handlers.shutdownNow();
+	}
+
+	private static final class Request {
+		final int[] promptIds;
+		final int maxTokens;
+		final Sampler sampler;
+		final int[][] stopSequences;
+		final CompletableFuture<int[]> result = new CompletableFuture<>();
+		// only for streamed requests; ends with END_OF_STREAM
+		final BlockingQueue<String> tokens;
+		volatile boolean cancelled;
+		Generation generation;
+
+		Request(int[] promptIds, int maxTokens, Sampler sampler, int[][] stopSequences, boolean stream) {
+			this.promptIds = promptIds;
+			this.maxTokens = maxTokens;
+			this.sampler = sampler;
+			this.stopSequences = stopSequences;
+			this.tokens = stream ? new LinkedBlockingQueue<>() : null;
+		}
+
+		void complete(int[] tokenIds) {
+			result.complete(tokenIds);
+			if (tokens != null) tokens.add(END_OF_STREAM);
+		}
+
+		void fail(Throwable cause) {
+			result.completeExceptionally(cause);
+			if (tokens != null) tokens.add(END_OF_STREAM);
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package com.simple.attention;
 
+import com.compute.FloatTensor;
+import com.util.Trace;
+
 public class ArrayPrinter {
 
 	public static String prettyPrint2D(float[][] array) {
@@ -129,6 +132,20 @@ public class ArrayPrinter {
         if (tokenIds == null || scores == null || tokenIds.length != scores.length) {
             throw new IllegalArgumentException("Invalid input dimensions");
         }
+        System.out.println(formatAttentionScores(prefix, tokenIds, scores));
+    }
+
+    /**
+     * The score table printAttentionScores writes. Rows and columns are both
+     * labelled from tokenIds, so scores may be a top-left corner of the full
+     * table.
+     */
+    public static String formatAttentionScores(String prefix, int[] tokenIds, float[][] scores) {
+        int cols = scores.length == 0 ? 0 : scores[0].length;
+        if (tokenIds == null || tokenIds.length < scores.length || tokenIds.length < cols) {
+            throw new IllegalArgumentException("Invalid input dimensions");
+        }
+        StringBuilder sb = new StringBuilder();
 
         // Determine column widths
         int tokenIdWidth = 8; // Minimum width for "Token ID"
@@ -138,28 +155,40 @@ public class ArrayPrinter {
             tokenIdWidth = Math.max(tokenIdWidth, String.valueOf(id).length() + 2);
         }
         
-        // Print header
-        System.out.printf(prefix+"\n%-" + tokenIdWidth + "s", "Token ID");
-        for (int id : tokenIds) {
-            System.out.printf("│ %-" + scoreWidth + "s", id);
+        // Header
+        sb.append(prefix).append('\n').append(String.format("%-" + tokenIdWidth + "s", "Token ID"));
+        for (int j = 0; j < cols; j++) {
+            sb.append(String.format("│ %-" + scoreWidth + "s", tokenIds[j]));
         }
-        System.out.println();
+        sb.append('\n');
 
-        // Print separator line
-        System.out.print(String.format("%-" + tokenIdWidth + "s", "").replace(' ', '─'));
-        for (int i = 0; i < tokenIds.length; i++) {
-            System.out.print("┼");
-            System.out.print(String.format("%-" + (scoreWidth + 1) + "s", "").replace(' ', '─'));
+        // Separator line
+        sb.append("─".repeat(tokenIdWidth));
+        for (int j = 0; j < cols; j++) {
+            sb.append("┼").append("─".repeat(scoreWidth + 1));
         }
-        System.out.println();
+        sb.append('\n');
 
-        // Print scores
-        for (int i = 0; i < tokenIds.length; i++) {
-            System.out.printf("%-" + tokenIdWidth + "s", tokenIds[i]);
-            for (int j = 0; j < tokenIds.length; j++) {
-                System.out.printf("│ %" + scoreWidth + ".4f", scores[i][j]);
+        // Scores
+        for (int i = 0; i < scores.length; i++) {
+            sb.append(String.format("%-" + tokenIdWidth + "s", tokenIds[i]));
+            for (int j = 0; j < cols; j++) {
+                sb.append(String.format("│ %" + scoreWidth + ".4f", scores[i][j]));
             }
-            System.out.println();
+            if (i < scores.length - 1) sb.append('\n');
         }
+        return sb.toString();
+    }
+
+    /**
+     * prettyPrint2D of at most the corner {@link Trace} allows, noting the full
+     * size when cut.
+     */
+    public static String prettyPrintTruncated(float[][] array) {
+        return prettyPrint2D(Trace.truncate(array)) + Trace.truncationNote(array);
+    }
+
+    public static String prettyPrintTruncated(FloatTensor matrix) {
+        return prettyPrint2D(Trace.truncate(matrix)) + Trace.truncationNote(matrix);
     }
 }
\ No newline at end of file
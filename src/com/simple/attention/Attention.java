@@ -2,9 +2,16 @@ package com.simple.attention;
 
 import java.util.Arrays;
 
+import com.compute.FloatTensor;
+import com.util.Trace;
+import com.util.Trace.Level;
+
 public class Attention {
 
 	public static void main(String[] args) {
+		if (System.getProperty("llm.trace") == null) {
+			Trace.setLevel(Level.TRACE);
+		}
 		int EMBED_DIM = 3; //Embedding dimension
 		int VOCAB_SIZE = 1000; //Vocabulary size
 		String text = "Time flies like an arrow";
@@ -14,17 +21,17 @@ public class Attention {
 		System.out.println("Tokens: "+Arrays.toString(tokens));
 		int[] tokenIds = tokenizer.tokenize(tokens);
 		System.out.println("Token IDs: "+Arrays.toString(tokenIds));
-		float[][] token_embeddings = tokenizer.getTokenEmbedding(tokenIds);
-		System.out.println("Token Embeddings: "+ArrayPrinter.prettyPrint2D(token_embeddings));
+		FloatTensor token_embeddings = tokenizer.embed(tokenIds);
+		System.out.println("Token Embeddings: "+ArrayPrinter.prettyPrint2D(token_embeddings.toArray()));
 		
 		//Keep query and key the same for simplicity
-		float[][] query = token_embeddings;
-		float[][] key = token_embeddings;
-		float[][] value = token_embeddings;
-		System.out.println("query = key = value: "+ArrayPrinter.prettyPrint2D(query));
+		FloatTensor query = token_embeddings;
+		FloatTensor key = token_embeddings;
+		FloatTensor value = token_embeddings;
+		System.out.println("query = key = value: "+ArrayPrinter.prettyPrint2D(query.toArray()));
 		
 		QueryKeyValueProcessor dotProduct = new QueryKeyValueProcessor();
-		float[][] attentionWeights = dotProduct.performScaledDotProduct(tokenIds, query, key, value);
+		FloatTensor attentionWeights = dotProduct.performScaledDotProduct(tokenIds, query, key, value);
 	}
 
 }
\ No newline at end of file
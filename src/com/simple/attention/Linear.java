@@ -0,0 +1,113 @@
+package com.simple.attention;
+
+import java.io.Serializable;
+import java.util.Random;
+
+import com.compute.FloatTensor;
+import com.compute.Gemm;
+import com.compute.Kernels;
+
+/**
+ * Fully connected layer, output = input x weights + bias. Weights are drawn
+ * once when the layer is created (Xavier/Glorot, bias zero) and kept in one
+ * contiguous tensor, so the same input always gives the same output and a
+ * batch of rows is projected with one GEMM.
+ */
+public class Linear implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final int inputSize;
+	private final int outputSize;
+	private final FloatTensor weights;
+	private final float[] bias;
+
+	public Linear(int inputSize, int outputSize) {
+		this(inputSize, outputSize, new Random());
+	}
+
+	public Linear(int inputSize, int outputSize, Random random) {
+		if (inputSize <= 0 || outputSize <= 0) {
+			throw new IllegalArgumentException("Input and output size must be positive");
+		}
+		this.inputSize = inputSize;
+		this.outputSize = outputSize;
+		this.weights = FloatTensor.zeros(inputSize, outputSize);
+		this.bias = new float[outputSize];
+		double stdv = Math.sqrt(2.0 / (inputSize + outputSize));
+		float[] values = weights.data();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (float) (random.nextGaussian() * stdv);
+		}
+	}
+
+	/**
+	 * Projects every row of a rows x inputSize matrix (any view); returns a
+	 * contiguous rows x outputSize tensor.
+	 */
+	public FloatTensor forward(FloatTensor input) {
+		if (input.rank() != 2 || input.size(0) == 0 || input.size(1) != inputSize) {
+			throw new IllegalArgumentException("Expected rows x " + inputSize + " input");
+		}
+		FloatTensor output = Gemm.multiply(input, weights);
+		float[] values = output.data();
+		for (int row = 0; row < output.size(0); row++) {
+			Kernels.add(values, row * outputSize, bias, 0, values, row * outputSize, outputSize);
+		}
+		return output;
+	}
+
+	public float[][] forward(float[][] input) {
+		if (input.length == 0 || input[0].length != inputSize) {
+			throw new IllegalArgumentException("Expected rows x " + inputSize + " input");
+		}
+		return forward(FloatTensor.of(input)).toArray();
+	}
+
+	public float[] forward(float[] input) {
+		return forward(FloatTensor.wrap(input, 1, input.length)).data();
+	}
+
+	/**
+	 * Plain SGD step for the gradient of the loss with respect to the last
+	 * forward's output. Returns the gradient with respect to its input. The
+	 * transposes are views, so nothing is copied before the two GEMMs.
+	 */
+	public FloatTensor backward(FloatTensor input, FloatTensor outputGradient, float learningRate) {
+		FloatTensor inputGradient = Gemm.multiply(outputGradient, weights.transpose());
+		FloatTensor weightGradient = Gemm.multiply(input.transpose(), outputGradient);
+		float[] values = weights.data();
+		float[] gradient = weightGradient.data();
+		for (int i = 0; i < values.length; i++) {
+			values[i] -= learningRate * gradient[i];
+		}
+		for (int row = 0; row < outputGradient.size(0); row++) {
+			for (int j = 0; j < outputSize; j++) {
+				bias[j] -= learningRate * outputGradient.get(row, j);
+			}
+		}
+		return inputGradient;
+	}
+
+	public float[][] backward(float[][] input, float[][] outputGradient, float learningRate) {
+		return backward(FloatTensor.of(input), FloatTensor.of(outputGradient), learningRate).toArray();
+	}
+
+	public int getInputSize() {
+		return inputSize;
+	}
+
+	public int getOutputSize() {
+		return outputSize;
+	}
+
+	/**
+	 * The inputSize x outputSize weight matrix, not a copy.
+	 */
+	public FloatTensor getWeights() {
+		return weights;
+	}
+
+	public float[] getBias() {
+		return bias;
+	}
+}
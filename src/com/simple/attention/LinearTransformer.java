@@ -1,19 +1,24 @@
 package com.simple.attention;
 
-import java.util.Random;
-
+/**
+ * One-off random projections, kept for the demos. Each call creates a new
+ * {@link Linear} layer, so every row of one call shares the same weights but
+ * separate calls do not; keep a Linear around when the projection has to be
+ * reused.
+ */
 public class LinearTransformer {
 	
 	public static float[][] linearTransform(float[][] input, int outputSize) {
 		if (outputSize <= 0) {
 			throw new IllegalArgumentException("Output size must be positive");
 		}
-		float[][] transformed = new float[input.length][outputSize];
-		for (int row = 0;row<input.length;row++) {
-			float[] rowContent = input[row];
-			transformed[row] = linearTransform(rowContent, outputSize);
+		if (input.length == 0) {
+			return new float[0][outputSize];
+		}
+		if (input[0] == null || input[0].length == 0) {
+			throw new IllegalArgumentException("Input cannot be null or empty");
 		}
-		return transformed;
+		return new Linear(input[0].length, outputSize).forward(input);
 	}
     
     public static float[] linearTransform(float[] input, int outputSize) {
@@ -24,30 +29,6 @@ public class LinearTransformer {
         if (outputSize <= 0) {
             throw new IllegalArgumentException("Output size must be positive");
         }
-        
-        int inputSize = input.length;
-        Random random = new Random();
-        float[] output = new float[outputSize];
-        
-        // Initialize weights and biases, then compute output
-        double stdv = Math.sqrt(2.0 / (inputSize + outputSize));
-        
-        for (int i = 0; i < outputSize; i++) {
-            // Initialize bias (typically starts at 0)
-            float bias = 0;
-            
-            // Compute weighted sum
-            float sum = 0;
-            for (int j = 0; j < inputSize; j++) {
-                // Initialize weight randomly (Xavier/Glorot initialization)
-                double weight = random.nextGaussian() * stdv;
-                sum += input[j] * weight;
-            }
-            
-            // Add bias
-            output[i] = sum + bias;
-        }
-        
-        return output;
+        return new Linear(input.length, outputSize).forward(input);
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,11 @@
 package com.simple.attention;
 
+import com.compute.FloatTensor;
+import com.compute.Gemm;
+import com.compute.Kernels;
+import com.util.Trace;
+import com.util.Trace.Level;
+
 public class Matrix {
 	
 	public static float[][] transpose(float[][] matrix) {
@@ -20,6 +26,13 @@ public class Matrix {
 	    return transposed;
 	}
 	
+	/**
+	 * Zero-copy transpose: a view with the strides swapped.
+	 */
+	public static FloatTensor transpose(FloatTensor matrix) {
+		return matrix.transpose();
+	}
+	
 	public static float[][] divideAllElemntsBy(float[][] matrix, float divisor) {
 		if (matrix == null || matrix.length == 0 || matrix[0].length == 0) {
 			return new float[0][0];
@@ -30,42 +43,49 @@ public class Matrix {
 		int rows = matrix.length;
 		int cols = matrix[0].length;
 		float[][] result = new float[rows][cols];
+		float reciprocal = 1.0f / divisor;
 		for (int i = 0; i < rows; i++) {
-			for (int j = 0; j < cols; j++) {
-				result[i][j] = matrix[i][j] / divisor;
-			}
+			Kernels.scale(matrix[i], reciprocal, result[i]);
 		}
 		return result;
 	}
 	
+	public static FloatTensor divideAllElemntsBy(FloatTensor matrix, float divisor) {
+		if (divisor == 0) {
+			throw new IllegalArgumentException("Divisor cannot be zero.");
+		}
+		FloatTensor source = matrix.contiguous();
+		FloatTensor result = FloatTensor.zeros(matrix.shape());
+		Kernels.scale(source.data(), source.offset(), 1.0f / divisor, result.data(), 0, result.elementCount());
+		return result;
+	}
+	
 	public static float[][] doCrossProduct(float[][] matrix1, float[][] matrix2) {
 		int row1 = matrix1.length;
 		int col1 = matrix1[0].length;
 		int row2 = matrix2.length;
 		int col2 = matrix2[0].length;
-		System.out.println("matrix1 dim: " + row1 + " x " + col1);
-		System.out.println("matrix2 dim: " + row2 + " x " + col2);
-		System.out.println("Multilplying " + ArrayPrinter.prettyPrint2D(matrix1) + "\n and " + ArrayPrinter.prettyPrint2D(matrix2));
+		if (Trace.sample(Level.DEBUG)) {
+			Trace.log(Level.DEBUG, "matrix1 dim: " + row1 + " x " + col1);
+			Trace.log(Level.DEBUG, "matrix2 dim: " + row2 + " x " + col2);
+			if (Trace.isEnabled(Level.TRACE)) {
+				Trace.log(Level.TRACE, "Multilplying " + ArrayPrinter.prettyPrintTruncated(matrix1) + "\n and " + ArrayPrinter.prettyPrintTruncated(matrix2));
+			}
+		}
 		if ((row1 == 0 || col1 == 0 || row2 == 0 || col2 == 0) || col1 != row2) {
 			throw new IllegalArgumentException("Invalid input dimensions for matrix1 and matrix2.");
 		}
-		float[][] result = new float[row1][col2];
-		for (int i = 0; i < row1; i++) {
-			for (int j = 0; j < col2; j++) {
-				float sum = 0.0f;
-				String multiplications = "";
-				for (int k = 0; k < col1; k++) {
-					sum += matrix1[i][k] * matrix2[k][j];
-					if(multiplications.equals("")) {
-						multiplications = String.format("%.2f * %.2f", matrix1[i][k], matrix2[k][j]);
-					} else {
-						multiplications += " + " + String.format("%.2f * %.2f", matrix1[i][k], matrix2[k][j]);
-					}
-				}
-				//System.out.println(multiplications + " = " + sum);
-				result[i][j] = sum;
+		return Gemm.multiply(matrix1, matrix2);
+	}
+
+	public static FloatTensor doCrossProduct(FloatTensor matrix1, FloatTensor matrix2) {
+		if (Trace.sample(Level.DEBUG)) {
+			Trace.log(Level.DEBUG, "matrix1 dim: " + matrix1.size(0) + " x " + matrix1.size(1));
+			Trace.log(Level.DEBUG, "matrix2 dim: " + matrix2.size(0) + " x " + matrix2.size(1));
+			if (Trace.isEnabled(Level.TRACE)) {
+				Trace.log(Level.TRACE, "Multilplying " + ArrayPrinter.prettyPrintTruncated(matrix1) + "\n and " + ArrayPrinter.prettyPrintTruncated(matrix2));
 			}
 		}
-		return result;
+		return Gemm.multiply(matrix1, matrix2);
 	}
 }
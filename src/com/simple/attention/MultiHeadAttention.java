@@ -0,0 +1,91 @@
+package com.simple.attention;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import com.compute.FloatTensor;
+
+/**
+ * Multi-head self-attention layer with its projection weights kept between
+ * calls. The query, key and value projections of all heads are one
+ * embedDim x 3*embedDim {@link Linear} layer, so a forward pass starts with a
+ * single GEMM instead of three per head. Each head then reads column slice
+ * views of that result, the heads run in parallel on the common pool, and each
+ * writes into its slice view of one tokens x embedDim tensor, so splitting and
+ * merging heads copies nothing. Heads use {@link TiledAttention}, so no
+ * tokens x tokens matrix is allocated.
+ */
+public class MultiHeadAttention {
+
+	private final int embedDim;
+	private final int numHeads;
+	private final int headDim;
+	// output columns: [Q head 0 .. Q head n-1 | K head 0 .. | V head 0 ..]
+	private final Linear qkvProjection;
+
+	public MultiHeadAttention(int embedDim, int numHeads) {
+		this(embedDim, numHeads, new Random());
+	}
+
+	public MultiHeadAttention(int embedDim, int numHeads, Random random) {
+		if (embedDim <= 0 || numHeads <= 0 || embedDim % numHeads != 0) {
+			throw new IllegalArgumentException("Embedding dimension " + embedDim + " must be a positive multiple of the head count " + numHeads);
+		}
+		this.embedDim = embedDim;
+		this.numHeads = numHeads;
+		this.headDim = embedDim / numHeads;
+		this.qkvProjection = new Linear(embedDim, 3 * embedDim, random);
+	}
+
+	/**
+	 * Attends every token to every token and returns the concatenated head
+	 * outputs, one row per token.
+	 */
+	public float[][] forward(float[][] input) {
+		return forward(input, false);
+	}
+
+	/**
+	 * @param causal whether each token may only attend to itself and earlier tokens
+	 */
+	public float[][] forward(float[][] input, boolean causal) {
+		return forward(FloatTensor.of(input), causal).toArray();
+	}
+
+	/**
+	 * Tensor version of {@link #forward(float[][], boolean)}: tokens x embedDim
+	 * in, a new contiguous tokens x embedDim tensor out.
+	 */
+	public FloatTensor forward(FloatTensor input, boolean causal) {
+		FloatTensor qkv = qkvProjection.forward(input);
+		FloatTensor output = FloatTensor.zeros(input.size(0), embedDim);
+		IntStream.range(0, numHeads).parallel().forEach(head -> attend(qkv, head, output, causal));
+		return output;
+	}
+
+	private void attend(FloatTensor qkv, int head, FloatTensor output, boolean causal) {
+		int q = head * headDim;
+		TiledAttention.attend(qkv.slice(1, q, q + headDim), qkv.slice(1, embedDim + q, embedDim + q + headDim),
+				qkv.slice(1, 2 * embedDim + q, 2 * embedDim + q + headDim), output.slice(1, q, q + headDim), causal,
+				TiledAttention.DEFAULT_BLOCK_SIZE);
+	}
+
+	public int getEmbedDim() {
+		return embedDim;
+	}
+
+	public int getNumHeads() {
+		return numHeads;
+	}
+
+	public int getHeadDim() {
+		return headDim;
+	}
+
+	/**
+	 * The fused embedDim x 3*embedDim projection.
+	 */
+	public Linear getQkvProjection() {
+		return qkvProjection;
+	}
+}
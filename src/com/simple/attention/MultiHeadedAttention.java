@@ -2,9 +2,16 @@ package com.simple.attention;
 
 import java.util.Arrays;
 
+import com.compute.FloatTensor;
+import com.util.Trace;
+import com.util.Trace.Level;
+
 public class MultiHeadedAttention {
 
 	public static void main(String[] args) {
+		if (System.getProperty("llm.trace") == null) {
+			Trace.setLevel(Level.TRACE);
+		}
 		int EMBED_DIM = 3; //Embedding dimension
 		int VOCAB_SIZE = 1000; //Vocabulary size
 		
@@ -15,35 +22,20 @@ public class MultiHeadedAttention {
 		System.out.println("Tokens: "+Arrays.toString(tokens));
 		int[] tokenIds = tokenizer.tokenize(tokens);
 		System.out.println("Token IDs: "+Arrays.toString(tokenIds));
-		float[][] token_embeddings = tokenizer.getTokenEmbedding(tokenIds);
-		System.out.println("Token Embeddings: "+Arrays.deepToString(token_embeddings));
+		FloatTensor token_embeddings = tokenizer.embed(tokenIds);
+		System.out.println("Token Embeddings: "+Arrays.deepToString(token_embeddings.toArray()));
 		
 		int NUM_HEADS = 3;
-		int HEAD_DIM = EMBED_DIM / NUM_HEADS; //Dimension of each head
-		float[][][] multiHeadedEmbeddings = new float[NUM_HEADS][token_embeddings.length][HEAD_DIM];
-		for(int head=0;head<NUM_HEADS;head++) {
-			System.out.println("Processing head: "+head);
-			//Keep query and key the same for simplicity
-			float[][] query = LinearTransformer.linearTransform(token_embeddings, HEAD_DIM);
-			float[][] key = LinearTransformer.linearTransform(token_embeddings, HEAD_DIM);
-			float[][] value = LinearTransformer.linearTransform(token_embeddings, HEAD_DIM);
-			System.out.println("query = key = value: "+Arrays.deepToString(query));
-			
-			QueryKeyValueProcessor dotProduct = new QueryKeyValueProcessor();
-			float[][] attentionWeights = dotProduct.performScaledDotProduct(tokenIds, query, key, value);
-			copyToMultiHeadedEmbeddings(multiHeadedEmbeddings, head, attentionWeights);
-		}
-		System.out.println("Combined: "+Arrays.deepToString(multiHeadedEmbeddings));
-	}
-
-	private static void copyToMultiHeadedEmbeddings(float[][][] multiHeadedEmbeddings, int head,
-			float[][] attentionWeights) {
-		for (int i = 0; i < attentionWeights.length; i++) {
-			for (int j = 0; j < attentionWeights[i].length; j++) {
-				multiHeadedEmbeddings[head][i][j] = attentionWeights[i][j];
-			}
+		//Q, K and V of every head come from one fused projection; heads run in parallel
+		MultiHeadAttention attention = new MultiHeadAttention(EMBED_DIM, NUM_HEADS);
+		System.out.println("Fused QKV weights: "+ArrayPrinter.prettyPrint2D(attention.getQkvProjection().getWeights().toArray()));
+		FloatTensor multiHeadedEmbeddings = attention.forward(token_embeddings, false);
+		//tokens x heads x headDim is the same memory, viewed per head
+		FloatTensor perHead = multiHeadedEmbeddings.reshape(tokenIds.length, NUM_HEADS, attention.getHeadDim());
+		for (int head = 0; head < NUM_HEADS; head++) {
+			System.out.println("Head " + head + ": " + ArrayPrinter.prettyPrint2D(perHead.select(1, head).toArray()));
 		}
-		
+		System.out.println("Combined: "+Arrays.deepToString(multiHeadedEmbeddings.toArray()));
 	}
 
 }
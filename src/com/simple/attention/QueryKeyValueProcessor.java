@@ -2,6 +2,11 @@ package com.simple.attention;
 
 import java.util.Arrays;
 
+import com.compute.FloatTensor;
+import com.compute.Kernels;
+import com.util.Trace;
+import com.util.Trace.Level;
+
 public class QueryKeyValueProcessor {
 	public float[][] performScaledDotProduct(int[] tokenIds, float[][] query, float[][] key, float[][] value) {
 		int numQueries = query.length;
@@ -9,51 +14,82 @@ public class QueryKeyValueProcessor {
 		if (numQueries == 0 || numKeys == 0 || query[0].length != key[0].length) {
 			throw new IllegalArgumentException("Invalid input dimensions for query and key.");
 		}
-		int embedDim = query[0].length;
-		if (embedDim != key[0].length) {
-			throw new IllegalArgumentException("Query and key must have the same embedding dimension.");
+		return performScaledDotProduct(tokenIds, FloatTensor.of(query), FloatTensor.of(key), FloatTensor.of(value)).toArray();
+	}
+
+	/**
+	 * Tensor version of the above; the key is transposed as a view, not copied.
+	 */
+	public FloatTensor performScaledDotProduct(int[] tokenIds, FloatTensor query, FloatTensor key, FloatTensor value) {
+		if (query.size(0) == 0 || key.size(0) == 0 || query.size(1) != key.size(1)) {
+			throw new IllegalArgumentException("Invalid input dimensions for query and key.");
 		}
+		int embedDim = query.size(1);
 		float sqrtVal = (float) Math.sqrt(embedDim);
-		System.out.println("calculating scores by multiplying query and key(transposed) and dividing by sqrt(embedDim): " + sqrtVal);
-		float[][] qv = Matrix.doCrossProduct(query, Matrix.transpose(key));
-		float[][] scores = Matrix.divideAllElemntsBy(qv, sqrtVal);
-		ArrayPrinter.printAttentionScores("scores after multiplying query and key(transposed) and dividing by sqrt(embedDim): " + sqrtVal,tokenIds, scores);
+		// one sampling decision per call, so a traced call is traced completely
+		boolean trace = Trace.sample(Level.DEBUG);
+		if (trace) Trace.log(Level.DEBUG, "calculating scores by multiplying query and key(transposed) and dividing by sqrt(embedDim): " + sqrtVal);
+		FloatTensor qv = Matrix.doCrossProduct(query, Matrix.transpose(key));
+		FloatTensor scores = Matrix.divideAllElemntsBy(qv, sqrtVal);
+		if (trace && Trace.isEnabled(Level.TRACE)) {
+			Trace.log(Level.TRACE, ArrayPrinter.formatAttentionScores("scores after multiplying query and key(transposed) and dividing by sqrt(embedDim): " + sqrtVal, tokenIds, Trace.truncate(scores)));
+		}
 
-		float[][] weights = softmax(scores);
-		ArrayPrinter.printAttentionScores("weights after doing softmax on scores: ",tokenIds, weights);
+		FloatTensor weights = softmax(scores, trace);
+		if (trace && Trace.isEnabled(Level.TRACE)) {
+			Trace.log(Level.TRACE, ArrayPrinter.formatAttentionScores("weights after doing softmax on scores: ", tokenIds, Trace.truncate(weights)));
+		}
 		
-		System.out.println("Multiplying weights with value to get attention scores");
-		float[][] attention = Matrix.doCrossProduct(weights,value);
-		System.out.println("Attention after multiplying weights with value: "+ArrayPrinter.prettyPrint2D(attention));
+		if (trace) Trace.log(Level.DEBUG, "Multiplying weights with value to get attention scores");
+		FloatTensor attention = Matrix.doCrossProduct(weights,value);
+		if (trace && Trace.isEnabled(Level.TRACE)) {
+			Trace.log(Level.TRACE, "Attention after multiplying weights with value: "+ArrayPrinter.prettyPrintTruncated(attention));
+		}
 
 		return attention;
 	}
 
-	private float[][] softmax(float[][] scores) {
-		int numRows = scores.length;
-		int numCols = scores[0].length;
-		float[][] softmaxScores = new float[numRows][numCols];
-		System.out.println("calculating softmax..");
+	/**
+	 * Same result as performScaledDotProduct without building the score and
+	 * weight matrices or printing them; see {@link TiledAttention}.
+	 */
+	public float[][] performTiledScaledDotProduct(float[][] query, float[][] key, float[][] value, boolean causal) {
+		return TiledAttention.attend(query, key, value, causal);
+	}
+
+	public FloatTensor performTiledScaledDotProduct(FloatTensor query, FloatTensor key, FloatTensor value, boolean causal) {
+		return TiledAttention.attend(query, key, value, causal);
+	}
+
+	/**
+	 * Softmax of each row of a score matrix, into a new tensor.
+	 */
+	public static FloatTensor softmax(FloatTensor scores) {
+		return softmax(scores.contiguous(), false);
+	}
+
+	// scores must be contiguous; row i is [i * numCols, (i + 1) * numCols) of its data
+	private static FloatTensor softmax(FloatTensor scores, boolean trace) {
+		int numRows = scores.size(0);
+		int numCols = scores.size(1);
+		float[] in = scores.data();
+		FloatTensor softmaxScores = FloatTensor.zeros(numRows, numCols);
+		float[] out = softmaxScores.data();
+		if (trace) Trace.log(Level.DEBUG, "calculating softmax..");
 		for (int row = 0; row < numRows; row++) {
-			float maxScoreInTheRow = Float.NEGATIVE_INFINITY;
+			int base = row * numCols;
 			//check all the columns in the row to find the max score
-			for (int col = 0; col < numCols; col++) {
-				if (scores[row][col] > maxScoreInTheRow) {
-					maxScoreInTheRow = scores[row][col];
-				}
-			}
+			float maxScoreInTheRow = Kernels.max(in, scores.offset() + base, numCols);
 
-			float sumExp = 0.0f;
-			for (int col = 0; col < numCols; col++) {
-				softmaxScores[row][col] = (float) Math.exp(scores[row][col] - maxScoreInTheRow);
-				sumExp += Math.exp(scores[row][col] - maxScoreInTheRow);
-			}
+			//exponentiate once per element, keeping the running sum
+			float sumExp = Kernels.expSum(in, scores.offset() + base, maxScoreInTheRow, 1.0f, out, base, numCols);
 
-			for (int col = 0; col < numCols; col++) {
-				softmaxScores[row][col] /= sumExp;
-			}
+			Kernels.scale(out, base, 1.0f / sumExp, out, base, numCols);
 			
-			System.out.println("Row: " + row + ", maxScoreInTheRow: " + maxScoreInTheRow + ", sumExp: " + sumExp + ", softmaxScores: " + Arrays.toString(softmaxScores[row]));
+			if (trace && row < Trace.getMaxRows() && Trace.isEnabled(Level.TRACE)) {
+				float[] shown = Arrays.copyOfRange(out, base, base + Math.min(numCols, Trace.getMaxCols()));
+				Trace.log(Level.TRACE, "Row: " + row + ", maxScoreInTheRow: " + maxScoreInTheRow + ", sumExp: " + sumExp + ", softmaxScores: " + Arrays.toString(shown));
+			}
 		}
 
 		return softmaxScores;
@@ -0,0 +1,139 @@
+package com.simple.attention;
+
+import java.util.Arrays;
+
+import com.compute.FloatTensor;
+
+/**
+ * Scaled dot-product attention that never builds the N x N score matrix. Query
+ * rows are taken a block at a time and the keys and values are streamed past
+ * them in blocks; each query row keeps a running maximum, a running sum of
+ * exponentials and a running weighted sum of values (online softmax), which are
+ * rescaled whenever a later block raises the maximum. Working memory is one
+ * score tile plus the accumulators of one query block, whatever the sequence
+ * length. Inputs are tensor views, so heads can read their slice of a fused
+ * projection in place.
+ *
+ * With the causal mask a query only sees keys at its own position or earlier,
+ * and key blocks entirely in the future are skipped.
+ */
+public final class TiledAttention {
+
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+
+	private TiledAttention() {
+	}
+
+	public static float[][] attend(float[][] query, float[][] key, float[][] value, boolean causal) {
+		if (query.length == 0 || key.length == 0 || key.length != value.length || query[0].length != key[0].length) {
+			throw new IllegalArgumentException("Invalid input dimensions for query, key and value.");
+		}
+		return attend(FloatTensor.of(query), FloatTensor.of(key), FloatTensor.of(value), causal).toArray();
+	}
+
+	public static FloatTensor attend(FloatTensor query, FloatTensor key, FloatTensor value, boolean causal) {
+		FloatTensor output = FloatTensor.zeros(query.size(0), value.size(1));
+		attend(query, key, value, output, causal, DEFAULT_BLOCK_SIZE);
+		return output;
+	}
+
+	/**
+	 * Attention over matrix views, e.g. one head's column slice of a fused
+	 * projection, writing query rows x value columns into output (also a view).
+	 * Every view needs unit column stride; rows may be any distance apart.
+	 */
+	public static void attend(FloatTensor query, FloatTensor key, FloatTensor value, FloatTensor output,
+			boolean causal, int blockSize) {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("Block size must be positive");
+		}
+		int queries = query.size(0);
+		int keys = key.size(0);
+		int dim = query.size(1);
+		int valueDim = value.size(1);
+		if (queries == 0 || keys == 0 || keys != value.size(0) || key.size(1) != dim || output.size(0) != queries
+				|| output.size(1) != valueDim) {
+			throw new IllegalArgumentException("Invalid input dimensions for query, key and value.");
+		}
+		if (query.stride(1) != 1 || key.stride(1) != 1 || value.stride(1) != 1 || output.stride(1) != 1) {
+			throw new IllegalArgumentException("Attention inputs and output need unit column stride");
+		}
+		float[] q = query.data();
+		float[] k = key.data();
+		float[] v = value.data();
+		float[] out = output.data();
+		int qStride = query.stride(0);
+		int kStride = key.stride(0);
+		int vStride = value.stride(0);
+		int outStride = output.stride(0);
+		float scale = (float) (1.0 / Math.sqrt(dim));
+		int queryBlock = Math.min(blockSize, queries);
+		int keyBlock = Math.min(blockSize, keys);
+		float[] scores = new float[queryBlock * keyBlock];
+		float[] rowMax = new float[queryBlock];
+		float[] rowSum = new float[queryBlock];
+		float[] acc = new float[queryBlock * valueDim];
+
+		for (int qStart = 0; qStart < queries; qStart += blockSize) {
+			int qEnd = Math.min(qStart + blockSize, queries);
+			Arrays.fill(rowMax, Float.NEGATIVE_INFINITY);
+			Arrays.fill(rowSum, 0);
+			Arrays.fill(acc, 0);
+			// with the mask, keys after the block's last query are never seen
+			int keyLimit = causal ? Math.min(keys, qEnd) : keys;
+
+			for (int kStart = 0; kStart < keyLimit; kStart += blockSize) {
+				int kEnd = Math.min(kStart + blockSize, keyLimit);
+				for (int i = qStart; i < qEnd; i++) {
+					int qBase = query.offset() + i * qStride;
+					int r = i - qStart;
+					int s = r * keyBlock;
+					int visibleEnd = causal ? Math.min(kEnd, i + 1) : kEnd;
+					float blockMax = Float.NEGATIVE_INFINITY;
+					for (int j = kStart; j < visibleEnd; j++) {
+						int kBase = key.offset() + j * kStride;
+						float dot = 0;
+						for (int d = 0; d < dim; d++) {
+							dot += q[qBase + d] * k[kBase + d];
+						}
+						scores[s + j - kStart] = dot * scale;
+						blockMax = Math.max(blockMax, scores[s + j - kStart]);
+					}
+					if (visibleEnd <= kStart) {
+						continue;
+					}
+
+					// rescale what was accumulated under the old maximum
+					float newMax = Math.max(rowMax[r], blockMax);
+					float correction = (float) Math.exp(rowMax[r] - newMax);
+					int a = r * valueDim;
+					if (correction != 1.0f) {
+						for (int d = 0; d < valueDim; d++) {
+							acc[a + d] *= correction;
+						}
+					}
+					float sum = rowSum[r] * correction;
+					for (int j = kStart; j < visibleEnd; j++) {
+						float p = (float) Math.exp(scores[s + j - kStart] - newMax);
+						sum += p;
+						int vBase = value.offset() + j * vStride;
+						for (int d = 0; d < valueDim; d++) {
+							acc[a + d] += p * v[vBase + d];
+						}
+					}
+					rowMax[r] = newMax;
+					rowSum[r] = sum;
+				}
+			}
+
+			for (int i = qStart; i < qEnd; i++) {
+				int r = i - qStart;
+				float inverse = 1.0f / rowSum[r];
+				int outBase = output.offset() + i * outStride;
+				for (int d = 0; d < valueDim; d++) {
+					out[outBase + d] = acc[r * valueDim + d] * inverse;
+				}
+			}
+		}
+	}
+}
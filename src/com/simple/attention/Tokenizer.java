@@ -1,11 +1,21 @@
 package com.simple.attention;
 
 import java.util.Random;
+import java.util.stream.IntStream;
 
+import com.compute.FloatTensor;
+
+/**
+ * Hashes words into a fixed vocabulary and gives every id a deterministic
+ * random embedding seeded by the id. The embeddings live in one flat
+ * vocabSize x embedDim table that is filled in parallel on first use, so a
+ * lookup is a copy out of that table.
+ */
 public class Tokenizer {
 	private int vocabSize;
 	private int embedDim;
 	private int tokenIds[];
+	private volatile float[] table;
 	
 	public Tokenizer(int vocabSize, int enbedDim) {
 		this.vocabSize = vocabSize;
@@ -46,20 +56,81 @@ public class Tokenizer {
 	
 	public float[][] getTokenEmbedding(int[] tokenIds) {
 		float[][] embeddings = new float[tokenIds.length][embedDim];
-		for (int i = 0; i < tokenIds.length; i++) {
-			embeddings[i] = getTokenEmbedding(tokenIds[i]);
-		}
+		gather(tokenIds, embeddings);
 		return embeddings;
 	}
 	
 	public float[] getTokenEmbedding(int tokenId) {
 		float[] embedding = new float[embedDim];
-		Random random = new Random(tokenId);
-		for (int i = 0; i < embedDim; i++) {
-			embedding[i] = (random.nextInt(200) - 100) / 100.0f;;
-		}
+		System.arraycopy(table(), offset(tokenId), embedding, 0, embedDim);
 		return embedding;
 	}
+	
+	/**
+	 * Copies the embedding of each id into the matching row of {@code out}.
+	 */
+	public void gather(int[] tokenIds, float[][] out) {
+		if (out.length < tokenIds.length) {
+			throw new IllegalArgumentException("Output has " + out.length + " rows for " + tokenIds.length + " tokens");
+		}
+		float[] t = table();
+		for (int i = 0; i < tokenIds.length; i++) {
+			System.arraycopy(t, offset(tokenIds[i]), out[i], 0, embedDim);
+		}
+	}
+	
+	/**
+	 * Copies the embeddings of the ids back to back into {@code out}, starting
+	 * at {@code offset}.
+	 */
+	public void gather(int[] tokenIds, float[] out, int offset) {
+		if (offset < 0 || out.length - offset < (long) tokenIds.length * embedDim) {
+			throw new IllegalArgumentException("Output has no room for " + tokenIds.length + " x " + embedDim
+					+ " values at offset " + offset);
+		}
+		float[] t = table();
+		for (int i = 0; i < tokenIds.length; i++) {
+			System.arraycopy(t, offset(tokenIds[i]), out, offset + i * embedDim, embedDim);
+		}
+	}
+	
+	/**
+	 * The embeddings of the ids as a new tokens x embedDim tensor.
+	 */
+	public FloatTensor embed(int[] tokenIds) {
+		FloatTensor embeddings = FloatTensor.zeros(tokenIds.length, embedDim);
+		gather(tokenIds, embeddings.data(), 0);
+		return embeddings;
+	}
+	
+	private int offset(int tokenId) {
+		if (tokenId < 0 || tokenId >= vocabSize) {
+			throw new IllegalArgumentException("Token id " + tokenId + " outside vocabulary of " + vocabSize);
+		}
+		return tokenId * embedDim;
+	}
+	
+	private float[] table() {
+		float[] t = table;
+		if (t == null) {
+			synchronized (this) {
+				t = table;
+				if (t == null) {
+					float[] values = new float[vocabSize * embedDim];
+					// each row has its own Random(tokenId), so rows can be filled in any order
+					IntStream.range(0, vocabSize).parallel().forEach(tokenId -> {
+						Random random = new Random(tokenId);
+						int base = tokenId * embedDim;
+						for (int i = 0; i < embedDim; i++) {
+							values[base + i] = (random.nextInt(200) - 100) / 100.0f;
+						}
+					});
+					table = t = values;
+				}
+			}
+		}
+		return t;
+	}
 
 	public String[] getTokens(String text) {
 		text = text.toLowerCase();
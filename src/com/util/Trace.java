@@ -0,0 +1,146 @@
+package com.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.compute.FloatTensor;
+
+/**
+ * Switchable diagnostic output for the compute code. Call sites guard their
+ * messages with {@link #isEnabled} or {@link #sample}, so when tracing is off
+ * the cost is one field read and a compare: no strings are built and no
+ * matrices are formatted.
+ *
+ * The level comes from {@code -Dllm.trace} (off, info, debug or trace; off by
+ * default) and can be changed at run time. With {@code -Dllm.traceSample=N}
+ * only every Nth sampled event is written, and matrix dumps are cut to
+ * {@code -Dllm.traceMaxRows} x {@code -Dllm.traceMaxCols} (8 x 8 by default).
+ * Messages go to standard out unless another {@link Sink} is installed.
+ */
+public final class Trace {
+
+	public enum Level {
+		OFF, INFO, DEBUG, TRACE
+	}
+
+	@FunctionalInterface
+	public interface Sink {
+		void write(Level level, String message);
+	}
+
+	private static volatile Level level = Level.valueOf(System.getProperty("llm.trace", "off").toUpperCase());
+	private static volatile int sampleEvery = Math.max(1, Integer.getInteger("llm.traceSample", 1));
+	private static volatile int maxRows = Integer.getInteger("llm.traceMaxRows", 8);
+	private static volatile int maxCols = Integer.getInteger("llm.traceMaxCols", 8);
+	private static volatile Sink sink = (messageLevel, message) -> System.out.println(message);
+	private static final AtomicLong events = new AtomicLong();
+
+	private Trace() {
+	}
+
+	public static boolean isEnabled(Level messageLevel) {
+		return messageLevel.compareTo(level) <= 0 && messageLevel != Level.OFF;
+	}
+
+	/**
+	 * Like {@link #isEnabled}, but only lets one event in every sampleEvery
+	 * through. Call it once per event and write all of that event's messages
+	 * when it returns true.
+	 */
+	public static boolean sample(Level messageLevel) {
+		if (!isEnabled(messageLevel)) {
+			return false;
+		}
+		int every = sampleEvery;
+		return every == 1 || events.getAndIncrement() % every == 0;
+	}
+
+	public static void log(Level messageLevel, String message) {
+		if (isEnabled(messageLevel)) {
+			sink.write(messageLevel, message);
+		}
+	}
+
+	/**
+	 * Top-left corner of a matrix, at most maxRows x maxCols, for dumping.
+	 * Returns the matrix itself when it already fits.
+	 */
+	public static float[][] truncate(float[][] matrix) {
+		int rows = Math.min(matrix.length, maxRows);
+		int cols = matrix.length == 0 ? 0 : Math.min(matrix[0].length, maxCols);
+		if (rows == matrix.length && (rows == 0 || cols == matrix[0].length)) {
+			return matrix;
+		}
+		float[][] corner = new float[rows][];
+		for (int i = 0; i < rows; i++) {
+			corner[i] = Arrays.copyOf(matrix[i], cols);
+		}
+		return corner;
+	}
+
+	/**
+	 * The top-left corner of a matrix view, copied out for printing; the rest
+	 * of the tensor is never touched.
+	 */
+	public static float[][] truncate(FloatTensor matrix) {
+		return matrix.slice(0, 0, Math.min(matrix.size(0), maxRows)).slice(1, 0, Math.min(matrix.size(1), maxCols))
+				.toArray();
+	}
+
+	/**
+	 * Suffix noting that a dump was cut, empty if it was not.
+	 */
+	public static String truncationNote(float[][] matrix) {
+		int cols = matrix.length == 0 ? 0 : matrix[0].length;
+		if (matrix.length <= maxRows && cols <= maxCols) {
+			return "";
+		}
+		return "\n(first " + Math.min(matrix.length, maxRows) + " x " + Math.min(cols, maxCols) + " of " + matrix.length
+				+ " x " + cols + ")";
+	}
+
+	public static String truncationNote(FloatTensor matrix) {
+		int rows = matrix.size(0);
+		int cols = matrix.size(1);
+		if (rows <= maxRows && cols <= maxCols) {
+			return "";
+		}
+		return "\n(first " + Math.min(rows, maxRows) + " x " + Math.min(cols, maxCols) + " of " + rows + " x " + cols
+				+ ")";
+	}
+
+	public static Level getLevel() {
+		return level;
+	}
+
+	public static void setLevel(Level newLevel) {
+		level = newLevel;
+	}
+
+	public static void setSampleEvery(int every) {
+		if (every <= 0) {
+			throw new IllegalArgumentException("Sampling interval must be positive");
+		}
+		sampleEvery = every;
+	}
+
+	public static void setMaxDump(int rows, int cols) {
+		if (rows <= 0 || cols <= 0) {
+			throw new IllegalArgumentException("Dump size must be positive");
+		}
+		maxRows = rows;
+		maxCols = cols;
+	}
+
+	public static int getMaxRows() {
+		return maxRows;
+	}
+
+	public static int getMaxCols() {
+		return maxCols;
+	}
+
+	public static void setSink(Sink newSink) {
+		sink = newSink;
+	}
+}
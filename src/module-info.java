@@ -5,4 +5,13 @@
  * 
  */
 module llm {
-}
\ No newline at end of file
+	requires static jdk.incubator.vector;
+	requires jdk.httpserver;
+	// PhaseEvent, in an exported package, extends jdk.jfr.Event
+	requires transitive jdk.jfr;
+	requires java.management;
+	requires jdk.management;
+	
+	// JMX calls the MXBean interfaces reflectively
+	exports com.metrics;
+}